@@ -0,0 +1,67 @@
+package org.purejava.kwallet.jmh;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.openjdk.jmh.annotations.*;
+import org.purejava.kwallet.KDEWallet;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.fake.FakeKWalletd;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading secrets through {@link KDEWallet}, including the decoding of the replies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class KDEWalletReadBenchmark {
+
+    private static final String FOLDER = "Benchmark";
+    private static final String APPID = "Benchmark";
+
+    @Param({"16", "65536"})
+    public int secretSize;
+
+    @Param({"100"})
+    public int folderSize;
+
+    private FakeKWalletd kwalletd;
+    private KDEWallet wallet;
+    private int handle;
+
+    @Setup
+    public void setup() throws DBusException {
+        kwalletd = new FakeKWalletd();
+        var bytes = new byte[secretSize];
+        Arrays.fill(bytes, (byte) 'x');
+        kwalletd.storePassword(Static.DEFAULT_WALLET, FOLDER, "password", new String(bytes));
+        kwalletd.storeEntry(Static.DEFAULT_WALLET, FOLDER, "entry", bytes);
+        for (var i = 0; i < folderSize; i++) {
+            kwalletd.storeEntry(Static.DEFAULT_WALLET, FOLDER, "entry" + i, bytes);
+        }
+        wallet = kwalletd.kdeWallet();
+        handle = wallet.open(Static.DEFAULT_WALLET, 0L, APPID);
+    }
+
+    @TearDown
+    public void tearDown() {
+        kwalletd.close();
+    }
+
+    @Benchmark
+    public String readPassword() {
+        return wallet.readPassword(handle, FOLDER, "password", APPID);
+    }
+
+    @Benchmark
+    public byte[] readEntry() {
+        return wallet.readEntry(handle, FOLDER, "entry", APPID);
+    }
+
+    @Benchmark
+    public Map<String, byte[]> entriesList() {
+        return wallet.entriesList(handle, FOLDER, APPID);
+    }
+}
@@ -0,0 +1,50 @@
+package org.purejava.kwallet.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.purejava.kwallet.MapEntries;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of KWallet maps with {@link MapEntries}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MapEntriesBenchmark {
+
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private MapEntries map;
+    private byte[] encoded;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() {
+        map = new MapEntries();
+        for (var i = 0; i < entries; i++) {
+            map.storeEntry("key" + i, "value" + i);
+        }
+        encoded = map.getByteField();
+        buffer = ByteBuffer.allocate(encoded.length);
+    }
+
+    @Benchmark
+    public byte[] getByteField() {
+        return map.getByteField();
+    }
+
+    @Benchmark
+    public ByteBuffer writeTo() {
+        return map.writeTo(buffer);
+    }
+
+    @Benchmark
+    public MapEntries setByteField() {
+        var decoded = new MapEntries();
+        decoded.setByteField(encoded);
+        return decoded;
+    }
+}
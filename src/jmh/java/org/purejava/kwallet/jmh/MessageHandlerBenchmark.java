@@ -0,0 +1,54 @@
+package org.purejava.kwallet.jmh;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.openjdk.jmh.annotations.*;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.fake.FakeKWalletd;
+import org.purejava.kwallet.freedesktop.dbus.handlers.MessageHandler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a method call through {@link MessageHandler#send}, i.e. marshalling the call,
+ * waiting for the reply and demarshalling it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MessageHandlerBenchmark {
+
+    @Param({"16", "4096"})
+    public int payloadSize;
+
+    private static final String APPID = "Benchmark";
+
+    private FakeKWalletd kwalletd;
+    private MessageHandler handler;
+    private byte[] payload;
+    private int handle;
+
+    @Setup
+    public void setup() throws DBusException {
+        kwalletd = new FakeKWalletd();
+        handler = new MessageHandler(kwalletd.getConnection());
+        payload = new byte[payloadSize];
+        handle = kwalletd.kdeWallet().open(Static.DEFAULT_WALLET, 0L, APPID);
+    }
+
+    @TearDown
+    public void tearDown() {
+        kwalletd.close();
+    }
+
+    @Benchmark
+    public Object[] sendWriteEntry() {
+        return handler.send(Static.Service.KWALLETD6, Static.ObjectPaths.KWALLETD6, Static.Interfaces.KWALLET,
+                "writeEntry", "issays", handle, "folder", "key", payload, APPID);
+    }
+
+    @Benchmark
+    public Object[] sendOpen() {
+        return handler.send(Static.Service.KWALLETD6, Static.ObjectPaths.KWALLETD6, Static.Interfaces.KWALLET,
+                "open", "sxs", Static.DEFAULT_WALLET, 0L, APPID);
+    }
+}
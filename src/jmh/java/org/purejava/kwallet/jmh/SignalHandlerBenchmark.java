@@ -0,0 +1,61 @@
+package org.purejava.kwallet.jmh;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.openjdk.jmh.annotations.*;
+import org.purejava.kwallet.KWallet;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.freedesktop.dbus.handlers.SignalHandler;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link SignalHandler#handle} with a typed subscriber, e.g. during a burst
+ * of <code>KWallet.folderUpdated</code> signals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SignalHandlerBenchmark {
+
+    // signals are dispatched on the thread calling handle, each benchmark thread consumes into its own blackhole
+    private static final ThreadLocal<Blackhole> SINK = new ThreadLocal<>();
+
+    private SignalHandler handler;
+    private SignalHandler.Subscription subscription;
+    private KWallet.folderUpdated folderUpdated;
+    private KWallet.walletOpened walletOpened;
+
+    @Setup
+    public void setup() throws DBusException {
+        handler = SignalHandler.getInstance();
+        subscription = handler.subscribe(KWallet.folderUpdated.class, signal -> {
+            var blackhole = SINK.get();
+            if (null != blackhole) blackhole.consume(signal);
+        });
+        folderUpdated = new KWallet.folderUpdated(Static.ObjectPaths.KWALLETD6, Static.DEFAULT_WALLET, "Benchmark");
+        walletOpened = new KWallet.walletOpened(Static.ObjectPaths.KWALLETD6, Static.DEFAULT_WALLET);
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscription.close();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void handleFolderUpdated(Blackhole blackhole) {
+        SINK.set(blackhole);
+        handler.handle(folderUpdated);
+    }
+
+    @Benchmark
+    public void handleWithoutSubscriber() {
+        handler.handle(walletOpened);
+    }
+
+    @Benchmark
+    public KWallet.folderUpdated lastHandledSignal() {
+        return handler.getLastHandledSignal(KWallet.folderUpdated.class);
+    }
+}
@@ -1,8 +1,13 @@
 module org.purejava.kwallet {
     requires java.desktop;
+    requires java.management;
+    requires jdk.jfr;
     requires org.freedesktop.dbus;
     requires org.slf4j;
 
     exports org.purejava.kwallet;
     exports org.purejava.kwallet.freedesktop.dbus.handlers;
+    exports org.purejava.kwallet.metrics;
+
+    uses org.purejava.kwallet.metrics.MetricsRecorder;
 }
\ No newline at end of file
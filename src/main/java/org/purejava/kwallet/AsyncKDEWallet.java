@@ -0,0 +1,205 @@
+package org.purejava.kwallet;
+
+import org.purejava.kwallet.freedesktop.dbus.handlers.Messaging;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous view of a {@link KDEWallet}. Every method of {@link KWallet} is available here and returns
+ * a {@link CompletableFuture}, that gets completed from the reply callback of the D-Bus connection.
+ * No thread is blocked while a call is in flight.
+ * <p>
+ * Results are the same as the ones of the blocking methods, i.e. a missing reply completes the future
+ * with the default value the blocking method returns in that case. kwalletd does not reply to {@link #sync} and
+ * {@link #pamOpen}, they are sent without asking for a reply and their future is completed once they are sent.
+ *
+ * @see KDEWallet#async()
+ */
+public class AsyncKDEWallet {
+
+    private final Messaging kdewallet;
+
+    AsyncKDEWallet(Messaging kdewallet) {
+        this.kdewallet = kdewallet;
+    }
+
+    public CompletableFuture<Integer> open(String wallet, long wId, String appid) {
+        return toInt(kdewallet.sendAsync("open", "sxs", wallet, wId, appid), -1);
+    }
+
+    public CompletableFuture<Integer> openPath(String path, long wId, String appid) {
+        return toInt(kdewallet.sendAsync("openPath", "sxs", path, wId, appid), 0);
+    }
+
+    public CompletableFuture<Integer> openAsync(String wallet, long wId, String appid, boolean handleSession) {
+        return toInt(kdewallet.sendAsync("openAsync", "sxsb", wallet, wId, appid, handleSession), -1);
+    }
+
+    public CompletableFuture<Integer> openPathAsync(String path, long wId, String appid, boolean handleSession) {
+        return toInt(kdewallet.sendAsync("openPathAsync", "sxsb", path, wId, appid, handleSession), -1);
+    }
+
+    public CompletableFuture<Integer> close(String wallet, boolean force) {
+        return toInt(kdewallet.sendAsync("close", "sb", wallet, force), -1);
+    }
+
+    public CompletableFuture<Integer> close(int handle, boolean force, String appid) {
+        return toInt(kdewallet.sendAsync("close", "ibs", handle, force, appid), -1);
+    }
+
+    public CompletableFuture<Void> sync(int handle, String appid) {
+        kdewallet.sendNoReply("sync", "is", handle, appid);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public CompletableFuture<Integer> deleteWallet(String wallet) {
+        return toInt(kdewallet.sendAsync("deleteWallet", "s", wallet), -1);
+    }
+
+    public CompletableFuture<Boolean> isOpen(String wallet) {
+        return toBoolean(kdewallet.sendAsync("isOpen", "s", wallet));
+    }
+
+    public CompletableFuture<Boolean> isOpen(int handle) {
+        return toBoolean(kdewallet.sendAsync("isOpen", "i", handle));
+    }
+
+    public CompletableFuture<List<String>> users(String wallet) {
+        return kdewallet.sendAsync("users", "s", wallet).thenApply(KDEWallet::contentOrEmptyList);
+    }
+
+    public CompletableFuture<Void> changePassword(String wallet, long wId, String appid) {
+        return toVoid(kdewallet.sendAsync("changePassword", "sxs", wallet, wId, appid));
+    }
+
+    public CompletableFuture<List<String>> wallets() {
+        return kdewallet.sendAsync("wallets").thenApply(KDEWallet::contentOrEmptyList);
+    }
+
+    public CompletableFuture<List<String>> folderList(int handle, String appid) {
+        return kdewallet.sendAsync("folderList", "is", handle, appid).thenApply(KDEWallet::contentOrEmptyList);
+    }
+
+    public CompletableFuture<Boolean> hasFolder(int handle, String folder, String appid) {
+        return toBoolean(kdewallet.sendAsync("hasFolder", "iss", handle, folder, appid));
+    }
+
+    public CompletableFuture<Boolean> createFolder(int handle, String folder, String appid) {
+        return toBoolean(kdewallet.sendAsync("createFolder", "iss", handle, folder, appid));
+    }
+
+    public CompletableFuture<Boolean> removeFolder(int handle, String folder, String appid) {
+        return toBoolean(kdewallet.sendAsync("removeFolder", "iss", handle, folder, appid));
+    }
+
+    public CompletableFuture<List<String>> entryList(int handle, String folder, String appid) {
+        return kdewallet.sendAsync("entryList", "iss", handle, folder, appid).thenApply(KDEWallet::contentOrEmptyList);
+    }
+
+    public CompletableFuture<byte[]> readEntry(int handle, String folder, String key, String appid) {
+        return kdewallet.sendAsync("readEntry", "isss", handle, folder, key, appid).thenApply(KDEWallet::getBytes);
+    }
+
+    public CompletableFuture<byte[]> readMap(int handle, String folder, String key, String appid) {
+        return kdewallet.sendAsync("readMap", "isss", handle, folder, key, appid).thenApply(KDEWallet::getBytes);
+    }
+
+    public CompletableFuture<String> readPassword(int handle, String folder, String key, String appid) {
+        return toString(kdewallet.sendAsync("readPassword", "isss", handle, folder, key, appid));
+    }
+
+    public CompletableFuture<Map<String, byte[]>> entriesList(int handle, String folder, String appid) {
+        return kdewallet.sendAsync("entriesList", "iss", handle, folder, appid).thenApply(KDEWallet::getByteMap);
+    }
+
+    public CompletableFuture<Map<String, byte[]>> mapList(int handle, String folder, String appid) {
+        return kdewallet.sendAsync("mapList", "iss", handle, folder, appid).thenApply(KDEWallet::getByteMap);
+    }
+
+    public CompletableFuture<Map<String, String>> passwordList(int handle, String folder, String appid) {
+        return kdewallet.sendAsync("passwordList", "iss", handle, folder, appid).thenApply(KDEWallet::getStringMap);
+    }
+
+    public CompletableFuture<Integer> renameEntry(int handle, String folder, String oldName, String newName, String appid) {
+        return toInt(kdewallet.sendAsync("renameEntry", "issss", handle, folder, oldName, newName, appid), -1);
+    }
+
+    public CompletableFuture<Integer> writeEntry(int handle, String folder, String key, byte[] value, int entryType, String appid) {
+        return toInt(kdewallet.sendAsync("writeEntry", "issayis", handle, folder, key, value, entryType, appid), -1);
+    }
+
+    public CompletableFuture<Integer> writeEntry(int handle, String folder, String key, byte[] value, String appid) {
+        return toInt(kdewallet.sendAsync("writeEntry", "issays", handle, folder, key, value, appid), -1);
+    }
+
+    public CompletableFuture<Integer> writeMap(int handle, String folder, String key, byte[] value, String appid) {
+        return toInt(kdewallet.sendAsync("writeMap", "issays", handle, folder, key, value, appid), -1);
+    }
+
+    public CompletableFuture<Integer> writePassword(int handle, String folder, String key, String value, String appid) {
+        return toInt(kdewallet.sendAsync("writePassword", "issss", handle, folder, key, value, appid), -1);
+    }
+
+    public CompletableFuture<Boolean> hasEntry(int handle, String folder, String key, String appid) {
+        return toBoolean(kdewallet.sendAsync("hasEntry", "isss", handle, folder, key, appid));
+    }
+
+    public CompletableFuture<Integer> entryType(int handle, String folder, String key, String appid) {
+        return toInt(kdewallet.sendAsync("entryType", "isss", handle, folder, key, appid), 0);
+    }
+
+    public CompletableFuture<Integer> removeEntry(int handle, String folder, String key, String appid) {
+        return toInt(kdewallet.sendAsync("removeEntry", "isss", handle, folder, key, appid), -1);
+    }
+
+    public CompletableFuture<Boolean> disconnectApplication(String wallet, String application) {
+        return toBoolean(kdewallet.sendAsync("disconnectApplication", "ss", wallet, application));
+    }
+
+    public CompletableFuture<Void> reconfigure() {
+        return toVoid(kdewallet.sendAsync("reconfigure"));
+    }
+
+    public CompletableFuture<Boolean> folderDoesNotExist(String wallet, String folder) {
+        return toBoolean(kdewallet.sendAsync("folderDoesNotExist", "ss", wallet, folder));
+    }
+
+    public CompletableFuture<Boolean> keyDoesNotExist(String wallet, String folder, String key) {
+        return toBoolean(kdewallet.sendAsync("keyDoesNotExist", "sss", wallet, folder, key));
+    }
+
+    public CompletableFuture<Void> closeAllWallets() {
+        return toVoid(kdewallet.sendAsync("closeAllWallets"));
+    }
+
+    public CompletableFuture<String> networkWallet() {
+        return toString(kdewallet.sendAsync("networkWallet"));
+    }
+
+    public CompletableFuture<String> localWallet() {
+        return toString(kdewallet.sendAsync("localWallet"));
+    }
+
+    public CompletableFuture<Void> pamOpen(String wallet, byte[] passwordHash, int sessionTimeout) {
+        kdewallet.sendNoReply("pamOpen", "sayi", wallet, passwordHash, sessionTimeout);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private CompletableFuture<Integer> toInt(CompletableFuture<Object[]> response, int fallback) {
+        return response.thenApply(r -> null == r ? fallback : (int) r[0]);
+    }
+
+    private CompletableFuture<Boolean> toBoolean(CompletableFuture<Object[]> response) {
+        return response.thenApply(r -> null != r && (boolean) r[0]);
+    }
+
+    private CompletableFuture<String> toString(CompletableFuture<Object[]> response) {
+        return response.thenApply(r -> null == r ? "" : (String) r[0]);
+    }
+
+    private CompletableFuture<Void> toVoid(CompletableFuture<Object[]> response) {
+        return response.thenAccept(r -> { });
+    }
+}
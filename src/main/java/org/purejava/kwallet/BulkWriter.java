@@ -0,0 +1,164 @@
+package org.purejava.kwallet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Writes many secrets into an open wallet without waiting for each reply before sending the next call.
+ * Method calls are sent back-to-back on the connection, the number of calls awaiting their reply is bounded
+ * by a window. When the window is full, the writing thread blocks until a reply arrives.
+ * <p>
+ * Results are reported per item as soon as the reply arrives, via the returned future and an optional
+ * {@link Listener}. A result of 0 means the secret was stored, -1 that storing it failed.
+ */
+public class BulkWriter implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkWriter.class);
+    public static final int DEFAULT_WINDOW = 64;
+
+    private final AsyncKDEWallet wallet;
+    private final int handle;
+    private final String appid;
+    private final int window;
+    private final Semaphore inFlight;
+    private final Listener listener;
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * Callback for the result of a single write.
+     */
+    public interface Listener {
+        /**
+         * Called from the reply callback of the connection for every item written.
+         *
+         * @param folder The folder the secret was written to.
+         * @param key    Identifier for the secret.
+         * @param result 0 if storing the secret was successful, -1 otherwise.
+         */
+        void onResult(String folder, String key, int result);
+    }
+
+    public BulkWriter(KDEWallet wallet, int handle, String appid) {
+        this(wallet, handle, appid, DEFAULT_WINDOW, null);
+    }
+
+    /**
+     * @param wallet   The wallet to write to.
+     * @param handle   Valid handle to the wallet to write to.
+     * @param appid    AppID of the app to access the wallet.
+     * @param window   Maximum number of calls awaiting their reply.
+     * @param listener Receives the result of each write, may be null.
+     */
+    public BulkWriter(KDEWallet wallet, int handle, String appid, int window, Listener listener) {
+        if (window < 1) throw new IllegalArgumentException("Window must be at least 1");
+        this.wallet = wallet.async();
+        this.handle = handle;
+        this.appid = appid;
+        this.window = window;
+        this.inFlight = new Semaphore(window);
+        this.listener = listener;
+    }
+
+    public CompletableFuture<Integer> writeEntry(String folder, String key, byte[] value, int entryType) {
+        return submit(folder, key, () -> wallet.writeEntry(handle, folder, key, value, entryType, appid));
+    }
+
+    public CompletableFuture<Integer> writeEntry(String folder, String key, byte[] value) {
+        return submit(folder, key, () -> wallet.writeEntry(handle, folder, key, value, appid));
+    }
+
+    public CompletableFuture<Integer> writeMap(String folder, String key, byte[] value) {
+        return submit(folder, key, () -> wallet.writeMap(handle, folder, key, value, appid));
+    }
+
+    public CompletableFuture<Integer> writePassword(String folder, String key, String value) {
+        return submit(folder, key, () -> wallet.writePassword(handle, folder, key, value, appid));
+    }
+
+    private CompletableFuture<Integer> submit(String folder, String key, Supplier<CompletableFuture<Integer>> call) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while waiting to write {}/{}", folder, key);
+            return CompletableFuture.completedFuture(report(folder, key, -1));
+        }
+        CompletableFuture<Integer> reply;
+        try {
+            reply = call.get();
+        } catch (RuntimeException e) {
+            inFlight.release();
+            LOG.error(e.toString(), e.getCause());
+            return CompletableFuture.completedFuture(report(folder, key, -1));
+        }
+        return reply
+                .handle((result, e) -> {
+                    if (null != e) {
+                        LOG.error(e.toString(), e.getCause());
+                        return report(folder, key, -1);
+                    }
+                    return report(folder, key, result);
+                })
+                .whenComplete((result, e) -> inFlight.release());
+    }
+
+    private int report(String folder, String key, int result) {
+        if (result == 0) {
+            written.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+        if (null != listener) {
+            try {
+                listener.onResult(folder, key, result);
+            } catch (RuntimeException e) {
+                LOG.error(e.toString(), e.getCause());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Wait until all replies of the calls sent so far have arrived.
+     *
+     * @throws InterruptedException The waiting thread was interrupted.
+     */
+    public void flush() throws InterruptedException {
+        inFlight.acquire(window);
+        inFlight.release(window);
+    }
+
+    /**
+     * Number of secrets stored successfully so far.
+     *
+     * @return The amount of successful writes.
+     */
+    public int getWritten() {
+        return written.get();
+    }
+
+    /**
+     * Number of secrets that could not be stored so far.
+     *
+     * @return The amount of failed writes.
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while waiting for outstanding replies");
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package org.purejava.kwallet;
+
+import org.purejava.kwallet.freedesktop.dbus.handlers.SignalHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache for secrets and wallet metadata. Repeated calls of {@link #readPassword}, {@link #readEntry}
+ * and {@link #readMap} as well as the structural queries {@link #folderList}, {@link #hasFolder}, {@link #entryList},
+ * {@link #hasEntry} and {@link #entryType} are served from memory instead of the kwallet daemon.
+ * <p>
+ * Cached data of a folder is invalidated, when the <code>KWallet.folderUpdated</code> signal is received for it,
+ * cached folder lists on <code>KWallet.folderListUpdated</code> and everything cached for a wallet on
+ * <code>KWallet.walletClosed</code>, <code>KWallet.walletClosedId</code> and <code>KWallet.allWalletsClosed</code>.
+ * Writes through this wallet invalidate the affected entries as soon as they return.
+ * The cache holds at most <code>maxEntries</code> values and evicts the least recently used one first.
+ * If the delegate is a {@link KDEWallet}, values are loaded with {@link KDEWallet#call} and every reply is cached,
+ * including empty and negative ones, so that repeated lookups of missing entries do not reach kwalletd either.
+ * Failed and timed out calls are not cached. Other delegates can not tell an empty reply apart from a failed call,
+ * so only non-empty and positive values are cached for them.
+ */
+public class CachingKDEWallet extends DelegatingKWallet {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingKDEWallet.class);
+    private static final Set<String> FOLDER_QUERIES = Set.of("folderList", "hasFolder");
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private final List<SignalHandler.Subscription> subscriptions;
+    private final Map<Key, Object> cache;
+    private final Map<Integer, String> wallets = new ConcurrentHashMap<>();
+    private long generation = 0;
+
+    private record Key(int handle, String appid, String folder, String key, String method) {
+    }
+
+    public CachingKDEWallet(KWallet delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param delegate   The wallet to read from on a cache miss.
+     * @param maxEntries Maximum number of values to keep in memory.
+     */
+    public CachingKDEWallet(KWallet delegate, int maxEntries) {
+        super(delegate);
+        if (maxEntries < 1) throw new IllegalArgumentException("Cache must hold at least one entry");
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        var signals = SignalHandler.getInstance();
+        this.subscriptions = List.of(
+                signals.subscribe(KWallet.folderUpdated.class, fu -> invalidateFolder(fu.a, fu.b)),
+                signals.subscribe(KWallet.folderListUpdated.class, flu -> invalidateFolderList(flu.wallet)),
+                signals.subscribe(KWallet.walletClosedId.class, wc -> invalidateHandle(wc.handle)),
+                signals.subscribe(KWallet.walletClosed.class, wc -> invalidateWallet(wc.wallet)),
+                signals.subscribe(KWallet.allWalletsClosed.class, ac -> invalidateAll()));
+    }
+
+    @Override
+    public int open(String wallet, long wId, String appid) {
+        var handle = super.open(wallet, wId, appid);
+        if (handle > 0) wallets.put(handle, wallet);
+        return handle;
+    }
+
+    @Override
+    public int close(String wallet, boolean force) {
+        invalidateWallet(wallet);
+        return super.close(wallet, force);
+    }
+
+    @Override
+    public int close(int handle, boolean force, String appid) {
+        invalidateHandle(handle);
+        return super.close(handle, force, appid);
+    }
+
+    @Override
+    public int deleteWallet(String wallet) {
+        invalidateWallet(wallet);
+        return super.deleteWallet(wallet);
+    }
+
+    @Override
+    public List<String> folderList(int handle, String appid) {
+        return cached(new Key(handle, appid, "", "", "folderList"),
+                () -> List.copyOf(super.folderList(handle, appid)), l -> !l.isEmpty(),
+                r -> List.copyOf(KDEWallet.contentOrEmptyList(r)), "is", handle, appid);
+    }
+
+    @Override
+    public boolean hasFolder(int handle, String folder, String appid) {
+        return cached(new Key(handle, appid, folder, "", "hasFolder"),
+                () -> super.hasFolder(handle, folder, appid), b -> b,
+                r -> null != r && (boolean) r[0], "iss", handle, folder, appid);
+    }
+
+    @Override
+    public boolean createFolder(int handle, String folder, String appid) {
+        var created = super.createFolder(handle, folder, appid);
+        invalidateFolderList(handle);
+        return created;
+    }
+
+    @Override
+    public boolean removeFolder(int handle, String folder, String appid) {
+        var removed = super.removeFolder(handle, folder, appid);
+        invalidate(k -> k.handle() == handle && (k.folder().equals(folder) || FOLDER_QUERIES.contains(k.method())));
+        return removed;
+    }
+
+    @Override
+    public List<String> entryList(int handle, String folder, String appid) {
+        return cached(new Key(handle, appid, folder, "", "entryList"),
+                () -> List.copyOf(super.entryList(handle, folder, appid)), l -> !l.isEmpty(),
+                r -> List.copyOf(KDEWallet.contentOrEmptyList(r)), "iss", handle, folder, appid);
+    }
+
+    @Override
+    public byte[] readEntry(int handle, String folder, String key, String appid) {
+        var entry = cached(new Key(handle, appid, folder, key, "readEntry"),
+                () -> super.readEntry(handle, folder, key, appid), e -> e.length > 0,
+                KDEWallet::getBytes, "isss", handle, folder, key, appid);
+        return entry.clone();
+    }
+
+    @Override
+    public byte[] readMap(int handle, String folder, String key, String appid) {
+        var map = cached(new Key(handle, appid, folder, key, "readMap"),
+                () -> super.readMap(handle, folder, key, appid), m -> m.length > 0,
+                KDEWallet::getBytes, "isss", handle, folder, key, appid);
+        return map.clone();
+    }
+
+    @Override
+    public String readPassword(int handle, String folder, String key, String appid) {
+        return cached(new Key(handle, appid, folder, key, "readPassword"),
+                () -> super.readPassword(handle, folder, key, appid), p -> !p.isEmpty(),
+                r -> null == r ? "" : (String) r[0], "isss", handle, folder, key, appid);
+    }
+
+    @Override
+    public int renameEntry(int handle, String folder, String oldName, String newName, String appid) {
+        var result = super.renameEntry(handle, folder, oldName, newName, appid);
+        invalidateKey(handle, folder, oldName);
+        invalidateKey(handle, folder, newName);
+        return result;
+    }
+
+    @Override
+    public int writeEntry(int handle, String folder, String key, byte[] value, int entryType, String appid) {
+        var result = super.writeEntry(handle, folder, key, value, entryType, appid);
+        invalidateKey(handle, folder, key);
+        return result;
+    }
+
+    @Override
+    public int writeEntry(int handle, String folder, String key, byte[] value, String appid) {
+        var result = super.writeEntry(handle, folder, key, value, appid);
+        invalidateKey(handle, folder, key);
+        return result;
+    }
+
+    @Override
+    public int writeMap(int handle, String folder, String key, byte[] value, String appid) {
+        var result = super.writeMap(handle, folder, key, value, appid);
+        invalidateKey(handle, folder, key);
+        return result;
+    }
+
+    @Override
+    public int writePassword(int handle, String folder, String key, String value, String appid) {
+        var result = super.writePassword(handle, folder, key, value, appid);
+        invalidateKey(handle, folder, key);
+        return result;
+    }
+
+    @Override
+    public boolean hasEntry(int handle, String folder, String key, String appid) {
+        return cached(new Key(handle, appid, folder, key, "hasEntry"),
+                () -> super.hasEntry(handle, folder, key, appid), b -> b,
+                r -> null != r && (boolean) r[0], "isss", handle, folder, key, appid);
+    }
+
+    @Override
+    public int entryType(int handle, String folder, String key, String appid) {
+        return cached(new Key(handle, appid, folder, key, "entryType"),
+                () -> super.entryType(handle, folder, key, appid), t -> t != 0,
+                r -> null == r ? 0 : (int) r[0], "isss", handle, folder, key, appid);
+    }
+
+    @Override
+    public int removeEntry(int handle, String folder, String key, String appid) {
+        var result = super.removeEntry(handle, folder, key, appid);
+        invalidateKey(handle, folder, key);
+        return result;
+    }
+
+    @Override
+    public void closeAllWallets() {
+        invalidateAll();
+        super.closeAllWallets();
+    }
+
+    /**
+     * Get a value from the cache or load it from the delegate. A {@link KDEWallet} is called directly, the method
+     * of the key is called with the given signature and arguments and the reply is converted like the wallet does.
+     *
+     * @param key       The key of the value, its method is the D-Bus method to call.
+     * @param loader    Loads the value from a delegate, that is not a {@link KDEWallet}.
+     * @param present   Values of such a delegate, that can be told apart from a failed call.
+     * @param reply     Converts the reply parameters, null for a failed call.
+     * @param signature The D-Bus signature of the arguments.
+     * @param args      The arguments of the method call.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T cached(Key key, Supplier<T> loader, Predicate<T> present,
+                         Function<Object[], T> reply, String signature, Object... args) {
+        long loadedAt;
+        synchronized (cache) {
+            var value = cache.get(key);
+            if (null != value) return (T) value;
+            loadedAt = generation;
+        }
+        T value;
+        boolean cacheable;
+        if (delegate instanceof KDEWallet wallet) {
+            var result = wallet.call(key.method(), signature, args);
+            value = reply.apply(result.parameters());
+            cacheable = result.isSuccess();
+        } else {
+            value = loader.get();
+            cacheable = present.test(value);
+        }
+        if (!cacheable) return value;
+        synchronized (cache) {
+            // skip values that might have been invalidated while loading
+            if (loadedAt == generation) cache.put(key, value);
+        }
+        return value;
+    }
+
+    private void invalidate(Predicate<Key> filter) {
+        synchronized (cache) {
+            generation++;
+            cache.keySet().removeIf(filter);
+        }
+        LOG.debug("Invalidated cached secrets");
+    }
+
+    /**
+     * A write changes the entry itself, the list of entries of its folder and,
+     * as kwalletd creates missing folders on write, the list of folders.
+     */
+    private void invalidateKey(int handle, String folder, String key) {
+        invalidate(k -> k.handle() == handle
+                && (k.folder().equals(folder) && (k.key().equals(key) || k.key().isEmpty())
+                || FOLDER_QUERIES.contains(k.method())));
+    }
+
+    private void invalidateFolderList(int handle) {
+        invalidate(k -> k.handle() == handle && FOLDER_QUERIES.contains(k.method()));
+    }
+
+    private void invalidateHandle(int handle) {
+        invalidate(k -> k.handle() == handle);
+        wallets.remove(handle);
+    }
+
+    /**
+     * Handles, that were opened outside of this wallet, can not be mapped to a wallet name
+     * and get invalidated as well.
+     */
+    private boolean belongsTo(int handle, String wallet) {
+        var name = wallets.get(handle);
+        return null == name || name.equals(wallet);
+    }
+
+    private void invalidateWallet(String wallet) {
+        invalidate(k -> belongsTo(k.handle(), wallet));
+        wallets.values().removeIf(wallet::equals);
+    }
+
+    private void invalidateFolder(String wallet, String folder) {
+        invalidate(k -> k.folder().equals(folder) && belongsTo(k.handle(), wallet));
+    }
+
+    private void invalidateFolderList(String wallet) {
+        invalidate(k -> FOLDER_QUERIES.contains(k.method()) && belongsTo(k.handle(), wallet));
+    }
+
+    /**
+     * Drop all cached secrets and metadata.
+     */
+    public void invalidateAll() {
+        synchronized (cache) {
+            generation++;
+            cache.clear();
+        }
+        wallets.clear();
+    }
+
+    /**
+     * Number of values currently held in memory.
+     *
+     * @return Number of cached values.
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    @Override
+    public void close() {
+        subscriptions.forEach(SignalHandler.Subscription::close);
+        invalidateAll();
+        super.close();
+    }
+}
@@ -0,0 +1,251 @@
+package org.purejava.kwallet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class for decorators, that add behaviour to a {@link KWallet}. All calls are forwarded to the
+ * delegate, subclasses override the methods they are interested in.
+ */
+public abstract class DelegatingKWallet implements KWallet, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DelegatingKWallet.class);
+    protected final KWallet delegate;
+
+    protected DelegatingKWallet(KWallet delegate) {
+        this.delegate = delegate;
+    }
+
+    public KWallet getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return delegate.isEnabled();
+    }
+
+    @Override
+    public int open(String wallet, long wId, String appid) {
+        return delegate.open(wallet, wId, appid);
+    }
+
+    @Override
+    public int openPath(String path, long wId, String appid) {
+        return delegate.openPath(path, wId, appid);
+    }
+
+    @Override
+    public int openAsync(String wallet, long wId, String appid, boolean handleSession) {
+        return delegate.openAsync(wallet, wId, appid, handleSession);
+    }
+
+    @Override
+    public int openPathAsync(String path, long wId, String appid, boolean handleSession) {
+        return delegate.openPathAsync(path, wId, appid, handleSession);
+    }
+
+    @Override
+    public int close(String wallet, boolean force) {
+        return delegate.close(wallet, force);
+    }
+
+    @Override
+    public int close(int handle, boolean force, String appid) {
+        return delegate.close(handle, force, appid);
+    }
+
+    @Override
+    public void sync(int handle, String appid) {
+        delegate.sync(handle, appid);
+    }
+
+    @Override
+    public int deleteWallet(String wallet) {
+        return delegate.deleteWallet(wallet);
+    }
+
+    @Override
+    public boolean isOpen(String wallet) {
+        return delegate.isOpen(wallet);
+    }
+
+    @Override
+    public boolean isOpen(int handle) {
+        return delegate.isOpen(handle);
+    }
+
+    @Override
+    public List<String> users(String wallet) {
+        return delegate.users(wallet);
+    }
+
+    @Override
+    public void changePassword(String wallet, long wId, String appid) {
+        delegate.changePassword(wallet, wId, appid);
+    }
+
+    @Override
+    public List<String> wallets() {
+        return delegate.wallets();
+    }
+
+    @Override
+    public List<String> folderList(int handle, String appid) {
+        return delegate.folderList(handle, appid);
+    }
+
+    @Override
+    public boolean hasFolder(int handle, String folder, String appid) {
+        return delegate.hasFolder(handle, folder, appid);
+    }
+
+    @Override
+    public boolean createFolder(int handle, String folder, String appid) {
+        return delegate.createFolder(handle, folder, appid);
+    }
+
+    @Override
+    public boolean removeFolder(int handle, String folder, String appid) {
+        return delegate.removeFolder(handle, folder, appid);
+    }
+
+    @Override
+    public List<String> entryList(int handle, String folder, String appid) {
+        return delegate.entryList(handle, folder, appid);
+    }
+
+    @Override
+    public byte[] readEntry(int handle, String folder, String key, String appid) {
+        return delegate.readEntry(handle, folder, key, appid);
+    }
+
+    @Override
+    public byte[] readMap(int handle, String folder, String key, String appid) {
+        return delegate.readMap(handle, folder, key, appid);
+    }
+
+    @Override
+    public String readPassword(int handle, String folder, String key, String appid) {
+        return delegate.readPassword(handle, folder, key, appid);
+    }
+
+    @Override
+    public Map<String, byte[]> entriesList(int handle, String folder, String appid) {
+        return delegate.entriesList(handle, folder, appid);
+    }
+
+    @Override
+    public Map<String, byte[]> mapList(int handle, String folder, String appid) {
+        return delegate.mapList(handle, folder, appid);
+    }
+
+    @Override
+    public Map<String, String> passwordList(int handle, String folder, String appid) {
+        return delegate.passwordList(handle, folder, appid);
+    }
+
+    @Override
+    public int renameEntry(int handle, String folder, String oldName, String newName, String appid) {
+        return delegate.renameEntry(handle, folder, oldName, newName, appid);
+    }
+
+    @Override
+    public int writeEntry(int handle, String folder, String key, byte[] value, int entryType, String appid) {
+        return delegate.writeEntry(handle, folder, key, value, entryType, appid);
+    }
+
+    @Override
+    public int writeEntry(int handle, String folder, String key, byte[] value, String appid) {
+        return delegate.writeEntry(handle, folder, key, value, appid);
+    }
+
+    @Override
+    public int writeMap(int handle, String folder, String key, byte[] value, String appid) {
+        return delegate.writeMap(handle, folder, key, value, appid);
+    }
+
+    @Override
+    public int writePassword(int handle, String folder, String key, String value, String appid) {
+        return delegate.writePassword(handle, folder, key, value, appid);
+    }
+
+    @Override
+    public boolean hasEntry(int handle, String folder, String key, String appid) {
+        return delegate.hasEntry(handle, folder, key, appid);
+    }
+
+    @Override
+    public int entryType(int handle, String folder, String key, String appid) {
+        return delegate.entryType(handle, folder, key, appid);
+    }
+
+    @Override
+    public int removeEntry(int handle, String folder, String key, String appid) {
+        return delegate.removeEntry(handle, folder, key, appid);
+    }
+
+    @Override
+    public boolean disconnectApplication(String wallet, String application) {
+        return delegate.disconnectApplication(wallet, application);
+    }
+
+    @Override
+    public void reconfigure() {
+        delegate.reconfigure();
+    }
+
+    @Override
+    public boolean folderDoesNotExist(String wallet, String folder) {
+        return delegate.folderDoesNotExist(wallet, folder);
+    }
+
+    @Override
+    public boolean keyDoesNotExist(String wallet, String folder, String key) {
+        return delegate.keyDoesNotExist(wallet, folder, key);
+    }
+
+    @Override
+    public void closeAllWallets() {
+        delegate.closeAllWallets();
+    }
+
+    @Override
+    public String networkWallet() {
+        return delegate.networkWallet();
+    }
+
+    @Override
+    public String localWallet() {
+        return delegate.localWallet();
+    }
+
+    @Override
+    public void pamOpen(String wallet, byte[] passwordHash, int sessionTimeout) {
+        delegate.pamOpen(wallet, passwordHash, sessionTimeout);
+    }
+
+    @Override
+    public boolean isRemote() {
+        return delegate.isRemote();
+    }
+
+    @Override
+    public String getObjectPath() {
+        return delegate.getObjectPath();
+    }
+
+    @Override
+    public void close() {
+        if (delegate instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                LOG.error(e.toString(), e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.purejava.kwallet;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Result of a lookup of several keys at once, as returned by {@link KDEWallet#readPasswords} and
+ * {@link KDEWallet#readFolders}. A key the daemon has nothing for is neither among the values nor failed.
+ *
+ * @param values The values found, by key.
+ * @param failed The keys whose lookup failed, timed out or was abandoned, their values are unknown.
+ * @param <K>    The type of the keys.
+ * @param <V>    The type of the values.
+ */
+public record FanOutResult<K, V>(Map<K, V> values, Set<K> failed) {
+
+    /**
+     * @return True, if every lookup got a reply.
+     */
+    public boolean isComplete() {
+        return failed.isEmpty();
+    }
+}
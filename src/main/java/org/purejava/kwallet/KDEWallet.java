@@ -1,27 +1,34 @@
 package org.purejava.kwallet;
 
 import org.freedesktop.dbus.connections.impl.DBusConnection;
-import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
-import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.purejava.kwallet.freedesktop.dbus.handlers.CallPolicy;
 import org.purejava.kwallet.freedesktop.dbus.handlers.Messaging;
-import org.freedesktop.dbus.interfaces.DBus;
 import org.freedesktop.dbus.messages.DBusSignal;
 import org.freedesktop.dbus.types.Variant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class KDEWallet extends Messaging implements KWallet, AutoCloseable {
 
     private static final Logger LOG = LoggerFactory.getLogger(KDEWallet.class);
-    private static String SERVICE;
-    private static String OBJECT_PATHS;
     private final DBusConnection connection;
 
     public static final List<Class<? extends DBusSignal>> SIGNALS = Arrays.asList(
@@ -37,35 +44,52 @@ public class KDEWallet extends Messaging implements KWallet, AutoCloseable {
             walletCreated.class,
             walletListDirty.class);
 
+    /**
+     * Lookups without side effects, that get repeated with {@link CallPolicy#READ} if they fail: those of a single
+     * wallet, folder or key and the list of folders, which holds names only. Calls returning entry lists or whole
+     * folders keep {@link CallPolicy#DEFAULT}, as their replies grow with the content of a folder.
+     */
+    public static final Set<String> READS = Set.of("isOpen", "folderList", "hasFolder", "hasEntry", "entryType",
+            "readEntry", "readMap", "readPassword");
+
+    /**
+     * Methods that may show a dialog and wait for the user, they get {@link CallPolicy#INTERACTIVE}.
+     */
+    public static final Set<String> INTERACTIVE = Set.of("open", "openPath", "changePassword");
+
+    /**
+     * Maximum number of calls of {@link #readPasswords} and {@link #readFolders} awaiting their reply at a time.
+     */
+    public static final int FAN_OUT_WINDOW = 64;
+
+    private static final int PASSWORD_ENTRY = 1;
+
+    /**
+     * Create a wallet, that accesses the kwallet daemon found on the bus. The daemon is looked up once,
+     * if it changes later on, e.g. after {@link ServiceDiscovery#invalidate()}, a new wallet has to be created.
+     * @see ServiceDiscovery
+     *
+     * @param connection The connection to the session bus.
+     */
     public KDEWallet(DBusConnection connection) {
+        this(connection, ServiceDiscovery.of(connection).resolve());
+    }
+
+    /**
+     * Create a wallet, that accesses the given kwallet daemon without looking it up on the bus.
+     *
+     * @param connection The connection to the session bus.
+     * @param service    The kwallet daemon to access, e.g. {@link ServiceDiscovery#KWALLETD6}.
+     */
+    public KDEWallet(DBusConnection connection, ServiceDiscovery.Service service) {
         super(connection,
                 SIGNALS,
-                SERVICE,
-                OBJECT_PATHS,
+                null == service ? null : service.name(),
+                null == service ? null : service.objectPath(),
                 Static.Interfaces.KWALLET);
         this.connection = connection;
-    }
-
-    static {
-        try (var connection = DBusConnectionBuilder.forSessionBus().withShared(false).build()) {
-            try {
-                var bus = connection.getRemoteObject("org.freedesktop.DBus",
-                        "/org/freedesktop/DBus", DBus.class);
-                if (Arrays.asList(bus.ListActivatableNames()).contains(Static.Service.KWALLETD6)) {
-                    SERVICE = Static.Service.KWALLETD6;
-                    OBJECT_PATHS = Static.ObjectPaths.KWALLETD6;
-                    LOG.debug("Kwallet daemon v6 initialized");
-                } else if (Arrays.asList(bus.ListActivatableNames()).contains(Static.Service.KWALLETD5)) {
-                    SERVICE = Static.Service.KWALLETD5;
-                    OBJECT_PATHS = Static.ObjectPaths.KWALLETD5;
-                    LOG.debug("Kwallet daemon v5 initialized");
-                }
-            } catch (DBusException e) {
-                LOG.error(e.toString(), e.getCause());
-            }
-        } catch (IOException | DBusException e) {
-            LOG.error(e.toString(), e.getCause());
-        }
+        READS.forEach(method -> setCallPolicy(method, CallPolicy.READ));
+        INTERACTIVE.forEach(method -> setCallPolicy(method, CallPolicy.INTERACTIVE));
     }
 
     @Override
@@ -74,22 +98,7 @@ public class KDEWallet extends Messaging implements KWallet, AutoCloseable {
             LOG.debug("No d-bus connection available");
             return false;
         }
-        try {
-            var bus = connection.getRemoteObject("org.freedesktop.DBus",
-                    "/org/freedesktop/DBus", DBus.class);
-            if (Arrays.asList(bus.ListActivatableNames()).contains(Static.Service.KWALLETD6)) {
-                LOG.debug("Kwallet daemon v6 is available");
-                return true;
-            } else if (Arrays.asList(bus.ListActivatableNames()).contains(Static.Service.KWALLETD5)) {
-                LOG.debug("Kwallet daemon v5 is available");
-                return true;
-            } else {
-                return false;
-            }
-        } catch (DBusException e) {
-            LOG.error(e.toString(), e.getCause());
-            return false;
-        }
+        return ServiceDiscovery.of(connection).isAvailable();
     }
 
     @Override
@@ -212,15 +221,8 @@ public class KDEWallet extends Messaging implements KWallet, AutoCloseable {
      * @param response The b-bus reposnse to process
      * @return The data part of the response converted
      */
-    private byte[] getBytes(Object[] response) {
-        if (null == response) {
-            return new byte[0];
-        } else {
-            var objectList = (List<?>) response[0];
-            var entry = new byte[objectList.size()];
-            IntStream.range(0, objectList.size()).forEach(i -> entry[i] = (Byte) objectList.get(i));
-            return entry;
-        }
+    static byte[] getBytes(Object[] response) {
+        return null == response ? new byte[0] : Static.Convert.toByteArray(response[0]);
     }
 
     @Override
@@ -231,31 +233,42 @@ public class KDEWallet extends Messaging implements KWallet, AutoCloseable {
 
     @Override
     public Map<String, byte[]> entriesList(int handle, String folder, String appid) {
-        var map = contentOrEmptyMap(send("entriesList", "iss", handle, folder, appid));
-        return map.entrySet().stream()
-                .collect(Collectors.toMap(Map.Entry::getKey, e -> {
-                    var objectList = (List<?>) e.getValue().getValue();
-                    var innerMap = new byte[objectList.size()];
-                    IntStream.range(0, objectList.size()).forEach(i -> innerMap[i] = (Byte) objectList.get(i));
-                    return innerMap;
-                }));
+        return getByteMap(send("entriesList", "iss", handle, folder, appid));
     }
 
     @Override
     public Map<String, byte[]> mapList(int handle, String folder, String appid) {
-        var map = contentOrEmptyMap(send("mapList", "iss", handle, folder, appid));
-        return map.entrySet().stream()
-                .collect(Collectors.toMap(Map.Entry::getKey, e -> {
-                    var objectList = (List<?>) e.getValue().getValue();
-                    var innerMap = new byte[objectList.size()];
-                    IntStream.range(0, objectList.size()).forEach(i -> innerMap[i] = (Byte) objectList.get(i));
-                    return innerMap;
-                }));
+        return getByteMap(send("mapList", "iss", handle, folder, appid));
     }
 
     @Override
     public Map<String, String> passwordList(int handle, String folder, String appid) {
-        var map = contentOrEmptyMap(send("passwordList", "iss", handle, folder, appid));
+        return getStringMap(send("passwordList", "iss", handle, folder, appid));
+    }
+
+    /**
+     * Helper method to convert d-bus arg type "a{sv}" with values of type "ay" into a map of byte[]
+     *
+     * @param response The d-bus response to process
+     * @return The data part of the response converted
+     */
+    static Map<String, byte[]> getByteMap(Object[] response) {
+        var map = contentOrEmptyMap(response);
+        var result = new HashMap<String, byte[]>(map.size() * 4 / 3 + 1);
+        for (var e : map.entrySet()) {
+            result.put(e.getKey(), Static.Convert.toByteArray(e.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Helper method to convert d-bus arg type "a{sv}" with values of type "s" into a map of Strings
+     *
+     * @param response The d-bus response to process
+     * @return The data part of the response converted
+     */
+    static Map<String, String> getStringMap(Object[] response) {
+        var map = contentOrEmptyMap(response);
         return map.entrySet().stream()
                 .collect(Collectors.toMap(Map.Entry::getKey, e -> (String) e.getValue().getValue()));
     }
@@ -290,6 +303,79 @@ public class KDEWallet extends Messaging implements KWallet, AutoCloseable {
         return null == response ? -1 : (int) response[0];
     }
 
+    /**
+     * Read a password into a {@link SecretBuffer} without creating a <code>String</code>. The password is read
+     * in the form kwalletd stores it with <code>readEntry</code> and transcoded to UTF-8 in direct memory.
+     * Its entry type is read with a second call, that is sent first and awaited after <code>readEntry</code>.
+     * <p>
+     * The two calls are not atomic: if the entry is rewritten in between, the type of one version can meet
+     * the content of another. Content, that is not exactly one serialized string, is therefore not taken
+     * as a password. A rewrite between two passwords, or to an entry with the same layout, goes unnoticed.
+     *
+     * @param handle Valid handle to the wallet to read from.
+     * @param folder The folder to read from.
+     * @param key    Identifier for the password.
+     * @param appid  AppID of the app to access the wallet.
+     * @return The password, empty if there is no password with the key. The caller has to close the buffer.
+     */
+    public SecretBuffer readPasswordSecret(int handle, String folder, String key, String appid) {
+        var type = async().entryType(handle, folder, key, appid);
+        var bytes = getBytes(send("readEntry", "isss", handle, folder, key, appid));
+        if (type.join() != PASSWORD_ENTRY) {
+            Arrays.fill(bytes, (byte) 0);
+            return SecretBuffer.of(new byte[0]);
+        }
+        return SecretBuffer.takeQString(bytes);
+    }
+
+    /**
+     * Read an entry into a {@link SecretBuffer}. The array received from D-Bus is wiped.
+     *
+     * @param handle Valid handle to the wallet to read from.
+     * @param folder The folder to read from.
+     * @param key    Identifier for the entry.
+     * @param appid  AppID of the app to access the wallet.
+     * @return The entry as returned by <code>readEntry</code>. The caller has to close the buffer.
+     */
+    public SecretBuffer readEntrySecret(int handle, String folder, String key, String appid) {
+        return SecretBuffer.take(getBytes(send("readEntry", "isss", handle, folder, key, appid)));
+    }
+
+    /**
+     * Write a password from a {@link SecretBuffer} without creating a <code>String</code>. The password is
+     * written with <code>writeEntry</code> in the form kwalletd stores passwords, the transient array passed
+     * to D-Bus is wiped afterwards.
+     *
+     * @param handle Valid handle to the wallet to write to.
+     * @param folder The folder to write to.
+     * @param key    Identifier for the password.
+     * @param value  The password, UTF-8 encoded. The buffer is left open.
+     * @param appid  AppID of the app to access the wallet.
+     * @return 0 if storing the password was successful, -1 otherwise.
+     */
+    public int writePasswordSecret(int handle, String folder, String key, SecretBuffer value, String appid) {
+        var bytes = value.toQString();
+        try {
+            return writeEntry(handle, folder, key, bytes, PASSWORD_ENTRY, appid);
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Write an entry from a {@link SecretBuffer}, see {@link #writePasswordSecret(int, String, String, SecretBuffer, String)}.
+     *
+     * @return 0 if storing the entry was successful, -1 otherwise.
+     */
+    public int writeEntrySecret(int handle, String folder, String key, SecretBuffer value, String appid) {
+        var bytes = value.toBytes();
+        try {
+            return writeEntry(handle, folder, key, bytes, appid);
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
     @Override
     public boolean hasEntry(int handle, String folder, String key, String appid) {
         var response = send("hasEntry", "isss", handle, folder, key, appid);
@@ -371,11 +457,144 @@ public class KDEWallet extends Messaging implements KWallet, AutoCloseable {
         }
     }
 
-    private List<String> contentOrEmptyList(Object[] o) {
+    /**
+     * Get an asynchronous view of this wallet. The view shares connection and service with this wallet,
+     * but returns a {@link java.util.concurrent.CompletableFuture} for every method instead of blocking
+     * until the reply arrives.
+     *
+     * @return The asynchronous view.
+     */
+    public AsyncKDEWallet async() {
+        return new AsyncKDEWallet(this);
+    }
+
+    /**
+     * Read several passwords of a folder at once. The calls are sent without waiting for each other's reply,
+     * at most {@link #FAN_OUT_WINDOW} await their reply at a time, and the method returns when all replies are in.
+     * Each call is sent once and waits for the timeout of the policy of <code>readPassword</code>. Keys whose call
+     * failed or timed out are returned as failed, so they can be told apart from keys without a password.
+     * <p>
+     * If the calling thread is interrupted, calls awaiting their reply are abandoned and returned as failed,
+     * and the interrupt flag is set.
+     *
+     * @param handle Valid handle to the wallet to read from.
+     * @param folder The folder to read from.
+     * @param keys   The keys of the passwords.
+     * @param appid  AppID of the app to access the wallet.
+     * @return The passwords by key, keys without a password are left out, and the keys that could not be read.
+     */
+    public FanOutResult<String, String> readPasswords(int handle, String folder, Collection<String> keys, String appid) {
+        return fanOut(keys, key -> sendAsync("readPassword", "isss", handle, folder, key, appid),
+                response -> (String) response[0], password -> !password.isEmpty());
+    }
+
+    /**
+     * Read the entries of several folders at once, like {@link #readPasswords(int, String, Collection, String)}.
+     *
+     * @param handle  Valid handle to the wallet to read from.
+     * @param folders The folders to read.
+     * @param appid   AppID of the app to access the wallet.
+     * @return The entries of each folder as returned by {@link #entriesList(int, String, String)},
+     * empty or missing folders are left out, and the folders that could not be read.
+     */
+    public FanOutResult<String, Map<String, byte[]>> readFolders(int handle, Collection<String> folders, String appid) {
+        return fanOut(folders, folder -> sendAsync("entriesList", "iss", handle, folder, appid),
+                KDEWallet::getByteMap, entries -> !entries.isEmpty());
+    }
+
+    /**
+     * Stream the entries of all folders of a wallet. The folders are listed when the stream starts and read with
+     * <code>entriesList</code> one after the other as the consumer advances, so only the folder being consumed
+     * is held in memory. Parallel streams read different folders at the same time.
+     *
+     * @param handle Valid handle to the wallet to read from.
+     * @param appid  AppID of the app to access the wallet.
+     * @return The entries of the wallet, folder by folder.
+     */
+    public Stream<WalletEntry> stream(int handle, String appid) {
+        return StreamSupport.stream(() -> new WalletSpliterator(folderList(handle, appid), 1,
+                        folders -> entries(folders.get(0), entriesList(handle, folders.get(0), appid))),
+                WalletSpliterator.CHARACTERISTICS, false);
+    }
+
+    /**
+     * Stream the entries of a folder. The keys are listed when the stream starts, the entries are read in chunks
+     * of {@link #FAN_OUT_WINDOW} keys as the consumer advances, like {@link #readPasswords}. Entries removed
+     * or emptied after the keys were listed are left out. If an entry can not be read, the stream throws
+     * a <code>DBusExecutionException</code> instead of leaving the entry out.
+     *
+     * @param handle Valid handle to the wallet to read from.
+     * @param folder The folder to read.
+     * @param appid  AppID of the app to access the wallet.
+     * @return The entries of the folder.
+     */
+    public Stream<WalletEntry> stream(int handle, String folder, String appid) {
+        return StreamSupport.stream(() -> new WalletSpliterator(entryList(handle, folder, appid), FAN_OUT_WINDOW,
+                        keys -> entries(folder, complete(folder, fanOut(keys, key -> sendAsync("readEntry", "isss", handle, folder, key, appid),
+                                KDEWallet::getBytes, value -> value.length > 0)))),
+                WalletSpliterator.CHARACTERISTICS, false);
+    }
+
+    private static Map<String, byte[]> complete(String folder, FanOutResult<String, byte[]> result) {
+        if (!result.isComplete()) {
+            throw new DBusExecutionException("Could not read " + result.failed() + " of folder " + folder);
+        }
+        return result.values();
+    }
+
+    private static List<WalletEntry> entries(String folder, Map<String, byte[]> values) {
+        return values.entrySet().stream().map(e -> new WalletEntry(folder, e.getKey(), e.getValue())).toList();
+    }
+
+    /**
+     * Send the lookups of all keys and wait for their replies. A lookup without reply parameters, i.e. one that
+     * failed, timed out or was abandoned, is reported as failed instead of being mistaken for a missing value.
+     *
+     * @param keys    The keys to look up, duplicates are looked up once.
+     * @param lookup  Sends the call for a key, see {@link #sendAsync(String, String, Object...)}.
+     * @param reply   Converts the reply parameters of a successful call.
+     * @param present Values to return, others are left out as missing.
+     */
+    private static <K, V> FanOutResult<K, V> fanOut(Collection<K> keys, Function<K, CompletableFuture<Object[]>> lookup,
+                                                   Function<Object[], V> reply, Predicate<V> present) {
+        var window = new Semaphore(FAN_OUT_WINDOW);
+        var pending = new LinkedHashMap<K, CompletableFuture<Object[]>>();
+        try {
+            for (var key : keys) {
+                if (pending.containsKey(key)) continue;
+                window.acquire();
+                var future = lookup.apply(key);
+                future.whenComplete((value, e) -> window.release());
+                pending.put(key, future);
+            }
+            CompletableFuture.allOf(pending.values().toArray(CompletableFuture[]::new)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.values().forEach(future -> future.cancel(false));
+        } catch (ExecutionException e) {
+            // reported per key below
+            LOG.error(e.toString(), e.getCause());
+        }
+        var values = new LinkedHashMap<K, V>();
+        var failed = new LinkedHashSet<K>();
+        pending.forEach((key, future) -> {
+            var response = future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+            if (null == response) {
+                failed.add(key);
+                return;
+            }
+            var value = reply.apply(response);
+            if (present.test(value)) values.put(key, value);
+        });
+        if (!failed.isEmpty()) LOG.warn("{} of {} lookups failed", failed.size(), pending.size());
+        return new FanOutResult<>(values, failed);
+    }
+
+    static List<String> contentOrEmptyList(Object[] o) {
         return null == o ? List.of() : (List<String>) o[0];
     }
 
-    private Map<String, Variant> contentOrEmptyMap(Object[] o) {
+    static Map<String, Variant> contentOrEmptyMap(Object[] o) {
         return null == o ? Map.of() : (Map<String, Variant>) o[0];
     }
 }
\ No newline at end of file
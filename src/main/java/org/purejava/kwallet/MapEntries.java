@@ -3,8 +3,10 @@ package org.purejava.kwallet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
-import java.util.Arrays;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -17,8 +19,7 @@ public class MapEntries {
 
     private final Logger log = LoggerFactory.getLogger(MapEntries.class);
     private Map<String, String> map = new HashMap<>();
-    private final byte[] EMPTY_ENTRY = new byte[]{-1, -1, -1, -1};
-    private final byte[] EMPTY_VALUE = new byte[]{0, 0, 0, 0};
+    private static final int NULL_STRING = 0xFFFFFFFF;
 
     /**
      * Add or replace an entry to the map.
@@ -103,34 +104,52 @@ public class MapEntries {
      */
     public byte[] getByteField() {
         if (null == map || map.isEmpty()) return new byte[0];
-        try (var b = new ByteArrayOutputStream();
-             var s = new DataOutputStream(b)) {
-
-            s.writeInt(map.size());
-
-            for (var entry : map.entrySet()) {
-                if (null == entry.getKey() || entry.getKey().isEmpty()) {
-                    s.write(EMPTY_ENTRY);
-                    s.write(EMPTY_ENTRY);
-
-                } else if (null == entry.getValue() || entry.getValue().isEmpty()) {
-                    s.writeInt(entry.getKey().length() * 2);
-                    s.writeChars(entry.getKey());
-                    s.write(EMPTY_VALUE);
-
-                } else {
-                    s.writeInt(entry.getKey().length() * 2);
-                    s.writeChars(entry.getKey());
-                    s.writeInt(entry.getValue().length() * 2);
-                    s.writeChars(entry.getValue());
-                }
+        return writeTo(null).array();
+    }
+
+    /**
+     * Encode the map entries into a KWallet map compatible byte buffer.
+     * The given buffer is reused, if it is large enough to hold the encoded map, otherwise a new heap buffer
+     * of the exact size is allocated. The returned buffer is ready to be read, i.e. positioned at 0
+     * with its limit set to the end of the encoded map.
+     * @see MapEntries#setByteField(byte[])
+     *
+     * @param target The buffer to reuse, may be null.
+     * @return The buffer that holds the encoded map.
+     */
+    public ByteBuffer writeTo(ByteBuffer target) {
+        var size = encodedSize();
+        var buffer = null != target && target.capacity() >= size ? target.clear() : ByteBuffer.allocate(size);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(map.size());
+
+        for (var entry : map.entrySet()) {
+            if (null == entry.getKey() || entry.getKey().isEmpty()) {
+                buffer.putInt(NULL_STRING);
+                buffer.putInt(NULL_STRING);
+            } else {
+                putString(buffer, entry.getKey());
+                putString(buffer, Objects.toString(entry.getValue(), ""));
             }
-            return b.toByteArray();
+        }
+        return buffer.flip();
+    }
 
-        } catch (IOException e) {
-            log.error(e.toString(), e.getCause());
-            return new byte[0];
+    private int encodedSize() {
+        var size = 4;
+        for (var entry : map.entrySet()) {
+            size += 8;
+            if (null != entry.getKey() && !entry.getKey().isEmpty()) {
+                size += entry.getKey().length() * 2 + Objects.toString(entry.getValue(), "").length() * 2;
+            }
         }
+        return size;
+    }
+
+    private void putString(ByteBuffer buffer, String s) {
+        buffer.putInt(s.length() * 2);
+        buffer.asCharBuffer().put(s);
+        buffer.position(buffer.position() + s.length() * 2);
     }
 
     /**
@@ -148,59 +167,60 @@ public class MapEntries {
      * @return True if converting the byte field succeeded without errors, false otherwise.
      */
     public boolean setByteField(byte[] s) {
-        map = new HashMap<>();
-        if (null == s || s.length == 0) return true;
+        if (null == s || s.length == 0) {
+            map = new HashMap<>();
+            return true;
+        }
+        return setByteField(ByteBuffer.wrap(s));
+    }
 
-        try (var b = new ByteArrayInputStream(s);
-             var x = new DataInputStream(b)) {
+    /**
+     * Take a KWallet map compatible byte buffer and store it as a HashMap. The map is decoded in one pass
+     * from the position to the limit of the buffer, strings are decoded straight from the buffer.
+     * @see MapEntries#setByteField(byte[])
+     *
+     * @param buffer The buffer holding the encoded map.
+     * @return True if converting the buffer succeeded without errors, false otherwise.
+     */
+    public boolean setByteField(ByteBuffer buffer) {
+        map = new HashMap<>();
+        if (null == buffer || !buffer.hasRemaining()) return true;
 
-            var mapSize = x.readInt() & 0xFF;
+        try {
+            var b = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+            var mapSize = b.getInt();
+            if (mapSize < 0) throw new IllegalArgumentException("Invalid map size: " + Integer.toUnsignedString(mapSize));
+            // every entry takes at least 8 bytes, don't trust the size for presizing beyond that
+            map = new HashMap<>(Math.min(mapSize, b.remaining() / 8) * 4 / 3 + 1);
 
             for (var i = 0; i < mapSize; i++) {
-                // check if the mext part is a number or an EMPTY_ENTRY
-                var nextPart = new byte[4];
-                for (var k = 0; k < nextPart.length; k++) {
-                    nextPart[k] = x.readByte();
-                }
-                if (Arrays.equals(nextPart, EMPTY_ENTRY)) {
-                    map.put("", "");
-                    x.skipBytes(4);
-                    continue;
-                }
-                // we have a number
-                var keySize = fourBytesToInt(nextPart) / 2;
-                var k = new StringBuilder();
-
-                for (var j = 0; j < keySize; j++) {
-                    k.append(x.readChar());
-                }
-
-                // check if the next part is a number or an EMPTY_VALUE
-                nextPart = new byte[4];
-                for (var l = 0; l < nextPart.length; l++) {
-                    nextPart[l] = x.readByte();
-                }
-                if (Arrays.equals(nextPart, EMPTY_VALUE)) {
-                    map.put(k.toString(), "");
-                    continue;
-                }
-                var valueSize = fourBytesToInt(nextPart) / 2;
-                var v = new StringBuilder();
-                for (var j = 0; j < valueSize; j++) {
-                    v.append(x.readChar());
-                }
-                map.put(k.toString(), v.toString());
+                var key = getString(b);
+                var value = getString(b);
+                map.put(key, value);
             }
             return true;
 
-        } catch (IOException e) {
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
             log.error(e.toString(), e.getCause());
             return false;
         }
     }
 
-    private int fourBytesToInt(byte[] b) {
-        return ((b[0] << 24) + (b[1] << 16) + (b[2] << 8) + (b[3] << 0)) & 0xFF;
+    /**
+     * Decode a QString: a 32 bit length in bytes, followed by UTF-16 chars. A length of 0xFFFFFFFF
+     * represents a null string, which gets mapped to an empty one.
+     */
+    private String getString(ByteBuffer b) {
+        var length = b.getInt();
+        if (length == NULL_STRING || length == 0) return "";
+        if (length < 0 || length > b.remaining() || length % 2 != 0) {
+            throw new IllegalArgumentException("Invalid string length: " + Integer.toUnsignedString(length));
+        }
+        var s = b.hasArray()
+                ? new String(b.array(), b.arrayOffset() + b.position(), length, StandardCharsets.UTF_16BE)
+                : StandardCharsets.UTF_16BE.decode(b.slice(b.position(), length)).toString();
+        b.position(b.position() + length);
+        return s;
     }
 
     @Override
@@ -0,0 +1,166 @@
+package org.purejava.kwallet;
+
+import org.purejava.kwallet.freedesktop.dbus.handlers.SignalHandler;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers reads of replicated folders from a {@link WalletReplica} instead of the kwallet daemon.
+ * {@link #readPassword}, {@link #readEntry}, {@link #readMap}, {@link #entryList} and {@link #hasEntry} are served
+ * from the replica for handles to the replicated wallet, that were opened with {@link #open} through this wallet,
+ * as long as the replica contains the folder. All other calls go to the delegate.
+ * <p>
+ * Writes, renames and removals through this wallet go to the delegate. The changed folder is dropped from
+ * the replica afterwards and read from the delegate until it has been reconciled again, so the application
+ * always reads its own writes. Changes made by other applications reach the replica via
+ * <code>KWallet.folderUpdated</code>, with a short delay.
+ */
+public class ReplicatedKWallet extends DelegatingKWallet {
+
+    private final WalletReplica replica;
+    private final Set<Integer> handles = ConcurrentHashMap.newKeySet();
+    private final List<SignalHandler.Subscription> subscriptions;
+
+    /**
+     * @param delegate The wallet to forward all other calls to.
+     * @param replica  The replica to answer reads from, it gets closed with this wallet.
+     */
+    public ReplicatedKWallet(KWallet delegate, WalletReplica replica) {
+        super(delegate);
+        this.replica = replica;
+        var signals = SignalHandler.getInstance();
+        this.subscriptions = List.of(
+                signals.subscribe(KWallet.walletClosedId.class, wc -> handles.remove(wc.handle)),
+                signals.subscribe(KWallet.walletClosed.class, wc -> {
+                    if (replica.getWalletName().equals(wc.wallet)) handles.clear();
+                }),
+                signals.subscribe(KWallet.allWalletsClosed.class, ac -> handles.clear()));
+    }
+
+    public WalletReplica getReplica() {
+        return replica;
+    }
+
+    @Override
+    public int open(String wallet, long wId, String appid) {
+        var handle = super.open(wallet, wId, appid);
+        if (handle > 0) {
+            // kwalletd may hand out the number of a closed handle again for another wallet
+            if (replica.getWalletName().equals(wallet)) {
+                handles.add(handle);
+            } else {
+                handles.remove(handle);
+            }
+        }
+        return handle;
+    }
+
+    @Override
+    public int close(String wallet, boolean force) {
+        if (replica.getWalletName().equals(wallet)) handles.clear();
+        return super.close(wallet, force);
+    }
+
+    @Override
+    public int close(int handle, boolean force, String appid) {
+        handles.remove(handle);
+        return super.close(handle, force, appid);
+    }
+
+    @Override
+    public List<String> entryList(int handle, String folder, String appid) {
+        return replicated(handle, folder) ? replica.entryList(folder) : super.entryList(handle, folder, appid);
+    }
+
+    @Override
+    public byte[] readEntry(int handle, String folder, String key, String appid) {
+        return replicated(handle, folder) ? replica.readEntry(folder, key) : super.readEntry(handle, folder, key, appid);
+    }
+
+    @Override
+    public byte[] readMap(int handle, String folder, String key, String appid) {
+        return replicated(handle, folder) ? replica.readMap(folder, key) : super.readMap(handle, folder, key, appid);
+    }
+
+    @Override
+    public String readPassword(int handle, String folder, String key, String appid) {
+        return replicated(handle, folder) ? replica.readPassword(folder, key) : super.readPassword(handle, folder, key, appid);
+    }
+
+    @Override
+    public boolean hasEntry(int handle, String folder, String key, String appid) {
+        return replicated(handle, folder) ? replica.hasEntry(folder, key) : super.hasEntry(handle, folder, key, appid);
+    }
+
+    @Override
+    public boolean removeFolder(int handle, String folder, String appid) {
+        var removed = super.removeFolder(handle, folder, appid);
+        changed(handle, folder);
+        return removed;
+    }
+
+    @Override
+    public int renameEntry(int handle, String folder, String oldName, String newName, String appid) {
+        var result = super.renameEntry(handle, folder, oldName, newName, appid);
+        changed(handle, folder);
+        return result;
+    }
+
+    @Override
+    public int writeEntry(int handle, String folder, String key, byte[] value, int entryType, String appid) {
+        var result = super.writeEntry(handle, folder, key, value, entryType, appid);
+        changed(handle, folder);
+        return result;
+    }
+
+    @Override
+    public int writeEntry(int handle, String folder, String key, byte[] value, String appid) {
+        var result = super.writeEntry(handle, folder, key, value, appid);
+        changed(handle, folder);
+        return result;
+    }
+
+    @Override
+    public int writeMap(int handle, String folder, String key, byte[] value, String appid) {
+        var result = super.writeMap(handle, folder, key, value, appid);
+        changed(handle, folder);
+        return result;
+    }
+
+    @Override
+    public int writePassword(int handle, String folder, String key, String value, String appid) {
+        var result = super.writePassword(handle, folder, key, value, appid);
+        changed(handle, folder);
+        return result;
+    }
+
+    @Override
+    public int removeEntry(int handle, String folder, String key, String appid) {
+        var result = super.removeEntry(handle, folder, key, appid);
+        changed(handle, folder);
+        return result;
+    }
+
+    @Override
+    public void closeAllWallets() {
+        handles.clear();
+        super.closeAllWallets();
+    }
+
+    private boolean replicated(int handle, String folder) {
+        return handles.contains(handle) && replica.contains(folder);
+    }
+
+    private void changed(int handle, String folder) {
+        if (handles.contains(handle)) replica.invalidate(folder);
+    }
+
+    @Override
+    public void close() {
+        subscriptions.forEach(SignalHandler.Subscription::close);
+        replica.close();
+        super.close();
+    }
+}
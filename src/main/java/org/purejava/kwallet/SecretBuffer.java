@@ -0,0 +1,236 @@
+package org.purejava.kwallet;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A secret held in direct memory outside of the Java heap, that can be wiped deterministically.
+ * Passwords are kept UTF-8 encoded. Closing the buffer overwrites the secret with zeros, a buffer that is
+ * not closed gets wiped when it is garbage collected.
+ * <p>
+ * Secrets are read into a buffer by {@link KDEWallet#readPasswordSecret} and {@link KDEWallet#readEntrySecret}
+ * without creating a <code>String</code>, the transient arrays needed to pass a secret to and from D-Bus
+ * are wiped right after use. Copies dbus-java makes while encoding and decoding messages are out of reach.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public final class SecretBuffer implements AutoCloseable {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final int NULL_QSTRING = 0xFFFFFFFF;
+
+    private final ByteBuffer buffer;
+    private final Cleaner.Cleanable cleanable;
+    private boolean closed = false;
+
+    private record Wipe(ByteBuffer buffer) implements Runnable {
+        @Override
+        public void run() {
+            wipe(buffer);
+        }
+    }
+
+    private SecretBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.cleanable = CLEANER.register(this, new Wipe(buffer));
+    }
+
+    /**
+     * Copy a secret into a new buffer. The array is left untouched.
+     *
+     * @param bytes The secret.
+     * @return The buffer holding a copy of the secret.
+     */
+    public static SecretBuffer of(byte[] bytes) {
+        var buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return new SecretBuffer(buffer);
+    }
+
+    /**
+     * Encode a password into a new buffer as UTF-8. The array is left untouched.
+     *
+     * @param chars The password.
+     * @return The buffer holding the encoded password.
+     * @throws IllegalArgumentException The password contains unpaired surrogates.
+     */
+    public static SecretBuffer of(char[] chars) {
+        var buffer = ByteBuffer.allocateDirect(chars.length * 3);
+        encode(CharBuffer.wrap(chars), buffer, StandardCharsets.UTF_8.newEncoder());
+        buffer.flip();
+        return new SecretBuffer(buffer);
+    }
+
+    /**
+     * Number of bytes of the secret.
+     *
+     * @return The length of the secret.
+     */
+    public int length() {
+        checkOpen();
+        return buffer.limit();
+    }
+
+    public boolean isEmpty() {
+        return length() == 0;
+    }
+
+    /**
+     * Read-only view of the secret, that stays valid until the buffer is closed.
+     *
+     * @return The secret, positioned at its start.
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        checkOpen();
+        return buffer.asReadOnlyBuffer().position(0);
+    }
+
+    /**
+     * Decode the secret as UTF-8 into a new array. The caller is responsible for wiping the array.
+     *
+     * @return The password.
+     * @throws IllegalStateException The secret is no valid UTF-8.
+     */
+    public char[] toChars() {
+        var decoder = decoder(StandardCharsets.UTF_8.newDecoder());
+        var chars = new char[length()];
+        var out = CharBuffer.wrap(chars);
+        try {
+            var result = decoder.decode(asReadOnlyBuffer(), out, true);
+            if (result.isError()) result.throwException();
+            result = decoder.flush(out);
+            if (result.isError()) result.throwException();
+        } catch (CharacterCodingException e) {
+            Arrays.fill(chars, '\0');
+            throw new IllegalStateException("Secret is no valid UTF-8", e);
+        }
+        if (out.position() == chars.length) return chars;
+        var result = Arrays.copyOf(chars, out.position());
+        Arrays.fill(chars, '\0');
+        return result;
+    }
+
+    /**
+     * Overwrite the secret with zeros. The buffer can not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        cleanable.clean();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public String toString() {
+        return closed ? "SecretBuffer[closed]" : "SecretBuffer[" + buffer.limit() + " bytes]";
+    }
+
+    /**
+     * Copy the secret into an array to pass it to D-Bus. The caller is responsible for wiping the array.
+     */
+    byte[] toBytes() {
+        var bytes = new byte[length()];
+        asReadOnlyBuffer().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Take over a secret received from D-Bus and wipe the array.
+     */
+    static SecretBuffer take(byte[] bytes) {
+        try {
+            return of(bytes);
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Take over a password serialized as <code>QString</code>, i.e. its length in bytes followed by the UTF-16BE
+     * encoded characters, as kwalletd stores passwords, and wipe the array. An array, that holds anything but
+     * exactly one such string, gives an empty buffer.
+     */
+    static SecretBuffer takeQString(byte[] bytes) {
+        try {
+            var in = ByteBuffer.wrap(bytes);
+            var length = bytes.length < 4 ? NULL_QSTRING : in.getInt();
+            // the entry holds exactly one string, anything else is not a password
+            if (length == NULL_QSTRING || length < 0 || length != in.remaining() || length % 2 != 0) {
+                return of(new byte[0]);
+            }
+            in.limit(4 + length);
+            var chars = ByteBuffer.allocateDirect(length);
+            try {
+                chars.put(in).flip();
+                var buffer = ByteBuffer.allocateDirect(length / 2 * 3);
+                encode(chars.asCharBuffer(), buffer, StandardCharsets.UTF_8.newEncoder());
+                buffer.flip();
+                return new SecretBuffer(buffer);
+            } finally {
+                wipe(chars);
+            }
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Serialize the password as <code>QString</code> to pass it to D-Bus. The caller is responsible for wiping the array.
+     */
+    byte[] toQString() {
+        var chars = ByteBuffer.allocateDirect(length() * 2);
+        try {
+            var out = chars.asCharBuffer();
+            var decoder = decoder(StandardCharsets.UTF_8.newDecoder());
+            var result = decoder.decode(asReadOnlyBuffer(), out, true);
+            if (result.isError()) result.throwException();
+            var size = out.position() * 2;
+            var bytes = new byte[4 + size];
+            ByteBuffer.wrap(bytes).putInt(size).put(chars.limit(size));
+            return bytes;
+        } catch (CharacterCodingException e) {
+            throw new IllegalStateException("Secret is no valid UTF-8", e);
+        } finally {
+            wipe(chars);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) throw new IllegalStateException("Secret buffer is closed");
+    }
+
+    private static CharsetDecoder decoder(CharsetDecoder decoder) {
+        return decoder.onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    private static void encode(CharBuffer in, ByteBuffer out, CharsetEncoder encoder) {
+        encoder.onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+        try {
+            var result = encoder.encode(in, out, true);
+            if (result.isError()) result.throwException();
+            result = encoder.flush(out);
+            if (result.isError()) result.throwException();
+        } catch (CharacterCodingException e) {
+            wipe(out);
+            throw new IllegalArgumentException("Password contains invalid characters", e);
+        }
+    }
+
+    private static void wipe(ByteBuffer buffer) {
+        buffer.clear();
+        for (var i = 0; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+}
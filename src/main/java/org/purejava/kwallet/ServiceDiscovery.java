@@ -0,0 +1,153 @@
+package org.purejava.kwallet;
+
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.DBus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Finds the kwallet daemon on the session bus. kwalletd6 is preferred over kwalletd5.
+ * <p>
+ * The service is resolved lazily on first use, with a single call to <code>ListActivatableNames</code> on the
+ * connection of the caller. The answer of the bus is cached per connection, whether a daemon was found or not, and
+ * invalidated, when the bus announces a change of the owner of one of the kwalletd names via
+ * <code>NameOwnerChanged</code>. A lookup that fails is not cached, the next call asks the bus again.
+ * Concurrent callers wait for the lookup with a lock instead of a monitor, which does not pin virtual threads.
+ * <p>
+ * A discovery only references its connection weakly, so it is dropped together with the connection.
+ * Invalidation only affects later lookups: a {@link KDEWallet} stays bound to the service resolved when it was
+ * created. If the kwallet daemon changes, e.g. from kwalletd5 to kwalletd6, create a new wallet.
+ */
+public class ServiceDiscovery {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ServiceDiscovery.class);
+    private static final Map<DBusConnection, ServiceDiscovery> DISCOVERIES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public static final Service KWALLETD6 = new Service(Static.Service.KWALLETD6, Static.ObjectPaths.KWALLETD6);
+    public static final Service KWALLETD5 = new Service(Static.Service.KWALLETD5, Static.ObjectPaths.KWALLETD5);
+
+    private final WeakReference<DBusConnection> connection;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Optional<Service> resolved = null;
+    private boolean watching = false;
+
+    /**
+     * Name and object path of a kwallet daemon.
+     *
+     * @param name       The well-known bus name of the service.
+     * @param objectPath The path of the object that implements <code>org.kde.KWallet</code>.
+     */
+    public record Service(String name, String objectPath) {
+    }
+
+    private ServiceDiscovery(DBusConnection connection) {
+        // the map of discoveries holds its connections weakly, a strong reference would keep them forever
+        this.connection = new WeakReference<>(connection);
+    }
+
+    /**
+     * Get the discovery for a connection. Discoveries are shared per connection, so the service is looked up
+     * only once for all wallets using the same connection.
+     *
+     * @param connection The connection to the session bus.
+     * @return The discovery bound to the connection.
+     */
+    public static ServiceDiscovery of(DBusConnection connection) {
+        if (null == connection) return new ServiceDiscovery(null);
+        return DISCOVERIES.computeIfAbsent(connection, ServiceDiscovery::new);
+    }
+
+    /**
+     * Get the kwallet daemon, looking it up on the bus if it is not known yet.
+     *
+     * @return The service or null, if no kwallet daemon is available.
+     */
+    public Service resolve() {
+        var service = resolved;
+        if (null == service) {
+            lock.lock();
+            try {
+                service = resolved;
+                if (null == service) {
+                    service = lookup();
+                    if (null == service) return null;
+                    resolved = service;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return service.orElse(null);
+    }
+
+    /**
+     * Use the given service instead of looking it up. It stays in place until the next invalidation.
+     *
+     * @param service The service to use.
+     */
+    public void use(Service service) {
+        resolved = Optional.ofNullable(service);
+    }
+
+    /**
+     * Forget the resolved service, the next call to {@link #resolve()} looks it up again.
+     * Wallets created before keep using the service they were created with.
+     */
+    public void invalidate() {
+        resolved = null;
+    }
+
+    public boolean isAvailable() {
+        return null != resolve();
+    }
+
+    /**
+     * @return The answer of the bus, null if the bus could not be asked.
+     */
+    private Optional<Service> lookup() {
+        var connection = this.connection.get();
+        if (null == connection) {
+            LOG.debug("No d-bus connection available");
+            return null;
+        }
+        try {
+            watch(connection);
+            var bus = connection.getRemoteObject("org.freedesktop.DBus",
+                    "/org/freedesktop/DBus", DBus.class);
+            var names = Arrays.asList(bus.ListActivatableNames());
+            if (names.contains(Static.Service.KWALLETD6)) {
+                LOG.debug("Kwallet daemon v6 initialized");
+                return Optional.of(KWALLETD6);
+            } else if (names.contains(Static.Service.KWALLETD5)) {
+                LOG.debug("Kwallet daemon v5 initialized");
+                return Optional.of(KWALLETD5);
+            }
+            LOG.debug("No kwallet daemon available");
+            return Optional.empty();
+        } catch (DBusException | DBusExecutionException e) {
+            LOG.error(e.toString(), e.getCause());
+            return null;
+        }
+    }
+
+    private void watch(DBusConnection connection) throws DBusException {
+        if (watching) return;
+        connection.addSigHandler(DBus.NameOwnerChanged.class, signal -> {
+            if (Static.Service.KWALLETD6.equals(signal.name) || Static.Service.KWALLETD5.equals(signal.name)) {
+                LOG.debug("Owner of {} changed, invalidating kwallet daemon", signal.name);
+                invalidate();
+            }
+        });
+        watching = true;
+    }
+}
@@ -0,0 +1,85 @@
+package org.purejava.kwallet;
+
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * Layout of a wallet snapshot file, as written by {@link WalletExporter} and read by {@link WalletImporter}.
+ * <pre>
+ * header:  "KWSN" version:u8 flags:u8 [iterations:i32 salt:16 noncePrefix:8]   (bracket only if encrypted)
+ * chunks:  length:i32 data:length                                              (high bit of length marks the last chunk)
+ * records: FOLDER name | PASSWORD key value | STREAM key value | MAP key value  (tag:u8, strings and values as length:i32 bytes)
+ * </pre>
+ * The records are cut into chunks of at most {@link #CHUNK_SIZE} bytes. Encrypted snapshots protect each chunk
+ * with AES-GCM, using a key derived from a passphrase with PBKDF2 and the chunk number as part of the nonce,
+ * so chunks can neither be altered, reordered nor dropped unnoticed. Record tags of entries are the entry types
+ * of kwalletd. All numbers are big-endian.
+ */
+final class SnapshotFormat {
+
+    static final byte[] MAGIC = {'K', 'W', 'S', 'N'};
+    static final byte VERSION = 1;
+    static final byte ENCRYPTED = 1;
+
+    static final byte FOLDER = 0;
+    static final byte PASSWORD = 1;
+    static final byte STREAM = 2;
+    static final byte MAP = 3;
+
+    static final int CHUNK_SIZE = 64 * 1024;
+    static final int LAST_CHUNK = 0x80000000;
+    static final int MAX_VALUE_SIZE = 64 * 1024 * 1024;
+
+    static final int ITERATIONS = 210_000;
+    // bounds the time a crafted header can make the reader spend deriving the key
+    static final int MAX_ITERATIONS = 16 * ITERATIONS;
+    static final int SALT_BYTES = 16;
+    static final int NONCE_PREFIX_BYTES = 8;
+    static final int TAG_BITS = 128;
+    static final int TAG_BYTES = TAG_BITS / 8;
+    static final String CIPHER = "AES/GCM/NoPadding";
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * A key derived from a passphrase together with the salt and iteration count it was derived with, so that
+     * several snapshots can be written with a single derivation. Each snapshot still gets its own random nonce prefix.
+     */
+    record DerivedKey(SecretKey key, byte[] salt, int iterations) {
+
+        static DerivedKey derive(char[] passphrase) throws IOException {
+            var salt = new byte[SALT_BYTES];
+            new SecureRandom().nextBytes(salt);
+            return new DerivedKey(deriveKey(passphrase, salt, ITERATIONS), salt, ITERATIONS);
+        }
+    }
+
+    static SecretKey deriveKey(char[] passphrase, byte[] salt, int iterations) throws IOException {
+        var spec = new PBEKeySpec(passphrase, salt, iterations, 256);
+        try {
+            var bytes = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            return new SecretKeySpec(bytes, "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not derive the snapshot key", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    static GCMParameterSpec nonce(byte[] prefix, int chunk) {
+        var nonce = ByteBuffer.allocate(NONCE_PREFIX_BYTES + 4).put(prefix).putInt(chunk).array();
+        return new GCMParameterSpec(TAG_BITS, nonce);
+    }
+
+    static byte[] aad(boolean last) {
+        return new byte[]{(byte) (last ? 1 : 0)};
+    }
+}
@@ -0,0 +1,181 @@
+package org.purejava.kwallet;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import static org.purejava.kwallet.SnapshotFormat.*;
+
+/**
+ * Reads the records of a snapshot from a channel, one chunk at a time, see {@link SnapshotFormat}.
+ */
+final class SnapshotReader {
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer plain = ByteBuffer.allocate(CHUNK_SIZE);
+    private final ByteBuffer in = ByteBuffer.allocate(CHUNK_SIZE + TAG_BYTES);
+    private final ByteBuffer length = ByteBuffer.allocate(4);
+    private final Cipher cipher;
+    private final DerivedKey key;
+    private final byte[] noncePrefix;
+    private int chunk = 0;
+    private boolean last = false;
+
+    /**
+     * A record of a snapshot.
+     *
+     * @param type  The tag of the record, {@link SnapshotFormat#FOLDER} or an entry type.
+     * @param name  The name of the folder or the key of the entry.
+     * @param value The value of the entry, UTF-8 encoded for passwords, null for folders.
+     */
+    record Item(byte type, String name, byte[] value) {
+    }
+
+    /**
+     * Read the header of a snapshot.
+     *
+     * @param channel    The channel to read from.
+     * @param passphrase The passphrase the snapshot has been encrypted with, may be null for unencrypted snapshots.
+     * @throws IOException The channel does not contain a snapshot or the passphrase is missing.
+     */
+    SnapshotReader(ReadableByteChannel channel, char[] passphrase) throws IOException {
+        this.channel = channel;
+        var header = ByteBuffer.allocate(MAGIC.length + 2);
+        readFully(header);
+        var magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a wallet snapshot");
+        var version = header.get();
+        if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+        if ((header.get() & ENCRYPTED) == 0) {
+            this.cipher = null;
+            this.key = null;
+            this.noncePrefix = null;
+        } else {
+            if (null == passphrase) throw new IOException("Snapshot is encrypted, a passphrase is required");
+            var crypto = ByteBuffer.allocate(4 + SALT_BYTES + NONCE_PREFIX_BYTES);
+            readFully(crypto);
+            var iterations = crypto.getInt();
+            if (iterations < 1 || iterations > MAX_ITERATIONS) throw new IOException("Invalid snapshot header");
+            var salt = new byte[SALT_BYTES];
+            crypto.get(salt);
+            this.noncePrefix = new byte[NONCE_PREFIX_BYTES];
+            crypto.get(noncePrefix);
+            this.key = new DerivedKey(deriveKey(passphrase, salt, iterations), salt, iterations);
+            try {
+                this.cipher = Cipher.getInstance(CIPHER);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Could not create the snapshot cipher", e);
+            }
+        }
+        plain.limit(0);
+    }
+
+    /**
+     * The key the snapshot is encrypted with, to write further snapshots without deriving it again.
+     * It is only verified against the passphrase, once a chunk has been read.
+     *
+     * @return The key or null, if the snapshot is not encrypted.
+     */
+    DerivedKey key() {
+        return key;
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return The record or null, if the end of the snapshot has been reached.
+     * @throws IOException The snapshot is truncated, corrupted or the passphrase is wrong.
+     */
+    Item next() throws IOException {
+        while (!plain.hasRemaining()) {
+            if (!readChunk()) return null;
+        }
+        var type = get();
+        var name = new String(getBytes(), StandardCharsets.UTF_8);
+        return switch (type) {
+            case FOLDER -> new Item(type, name, null);
+            case PASSWORD, STREAM, MAP -> new Item(type, name, getBytes());
+            default -> throw new IOException("Invalid snapshot record " + type);
+        };
+    }
+
+    private byte get() throws IOException {
+        while (!plain.hasRemaining()) {
+            if (!readChunk()) throw new EOFException("Snapshot record is incomplete");
+        }
+        return plain.get();
+    }
+
+    private byte[] getBytes() throws IOException {
+        var size = (get() & 0xFF) << 24 | (get() & 0xFF) << 16 | (get() & 0xFF) << 8 | get() & 0xFF;
+        if (size < 0 || size > MAX_VALUE_SIZE) throw new IOException("Invalid snapshot value size " + size);
+        var bytes = new byte[size];
+        var offset = 0;
+        while (offset < size) {
+            while (!plain.hasRemaining()) {
+                if (!readChunk()) throw new EOFException("Snapshot record is incomplete");
+            }
+            var n = Math.min(plain.remaining(), size - offset);
+            plain.get(bytes, offset, n);
+            offset += n;
+        }
+        return bytes;
+    }
+
+    private boolean readChunk() throws IOException {
+        if (last) return false;
+        length.clear();
+        if (!readFully(length, true)) throw new EOFException("Snapshot is truncated");
+        var header = length.getInt();
+        last = (header & LAST_CHUNK) != 0;
+        var size = header & ~LAST_CHUNK;
+        // an encrypted chunk carries the authentication tag in addition to the plain text
+        var maxSize = null == cipher ? CHUNK_SIZE : CHUNK_SIZE + TAG_BYTES;
+        if (size > maxSize) throw new IOException("Invalid snapshot chunk size " + size);
+        in.clear().limit(size);
+        readFully(in);
+        plain.clear();
+        if (null == cipher) {
+            plain.put(in);
+        } else {
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key.key(), nonce(noncePrefix, chunk));
+                cipher.updateAAD(aad(last));
+                cipher.doFinal(in, plain);
+            } catch (AEADBadTagException e) {
+                throw new IOException("Snapshot can not be decrypted, the passphrase is wrong or the file is corrupted", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Could not decrypt the snapshot", e);
+            }
+        }
+        plain.flip();
+        chunk++;
+        return true;
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        if (!readFully(buffer, false)) throw new EOFException("Snapshot is truncated");
+    }
+
+    /**
+     * @return False, if the channel is at its end before anything has been read and that is allowed.
+     */
+    private boolean readFully(ByteBuffer buffer, boolean endAllowed) throws IOException {
+        var start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (endAllowed && buffer.position() == start) return false;
+                throw new EOFException("Snapshot is truncated");
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+}
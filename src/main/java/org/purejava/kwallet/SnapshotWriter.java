@@ -0,0 +1,208 @@
+package org.purejava.kwallet;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.purejava.kwallet.SnapshotFormat.*;
+
+/**
+ * Writes the records of a snapshot into a channel, see {@link SnapshotFormat}. Records are collected in a buffer
+ * of one chunk, so memory use does not depend on the size of the snapshot.
+ */
+final class SnapshotWriter {
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer plain = ByteBuffer.allocate(CHUNK_SIZE);
+    private final ByteBuffer out = ByteBuffer.allocate(4 + CHUNK_SIZE + TAG_BYTES);
+    private final Cipher cipher;
+    private final SecretKey key;
+    private final byte[] noncePrefix;
+    private int chunk = 0;
+    private boolean finished = false;
+
+    /**
+     * Write the header of a snapshot.
+     *
+     * @param channel    The channel to write to.
+     * @param passphrase The passphrase to encrypt the snapshot with, null to write it unencrypted.
+     * @throws IOException Writing to the channel failed.
+     */
+    SnapshotWriter(WritableByteChannel channel, char[] passphrase) throws IOException {
+        this(channel, null == passphrase ? null : DerivedKey.derive(passphrase));
+    }
+
+    /**
+     * Write the header of a snapshot.
+     *
+     * @param channel The channel to write to.
+     * @param key     The key to encrypt the snapshot with, null to write it unencrypted.
+     * @throws IOException Writing to the channel failed.
+     */
+    SnapshotWriter(WritableByteChannel channel, DerivedKey key) throws IOException {
+        this.channel = channel;
+        var header = ByteBuffer.allocate(MAGIC.length + 2 + 4 + SALT_BYTES + NONCE_PREFIX_BYTES);
+        header.put(MAGIC).put(VERSION);
+        if (null == key) {
+            header.put((byte) 0);
+            this.cipher = null;
+            this.key = null;
+            this.noncePrefix = null;
+        } else {
+            this.noncePrefix = new byte[NONCE_PREFIX_BYTES];
+            new SecureRandom().nextBytes(noncePrefix);
+            this.key = key.key();
+            try {
+                this.cipher = Cipher.getInstance(CIPHER);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Could not create the snapshot cipher", e);
+            }
+            header.put(ENCRYPTED).putInt(key.iterations()).put(key.salt()).put(noncePrefix);
+        }
+        header.flip();
+        write(header);
+    }
+
+    interface Body<T> {
+        T write(SnapshotWriter writer) throws IOException;
+    }
+
+    /**
+     * Write a snapshot file. The snapshot is written to a temporary file next to the target, readable by the owner
+     * only, and moved into place when the body has returned, so a failure never leaves a partial snapshot behind.
+     *
+     * @param file       The snapshot file to write, an existing file is replaced.
+     * @param passphrase The passphrase to encrypt the snapshot with, null to write it unencrypted.
+     * @param body       Writes the records, it has to call {@link #finish()} when it is done.
+     * @return The result of the body.
+     * @throws IOException The body failed or writing the file failed.
+     */
+    static <T> T write(Path file, char[] passphrase, Body<T> body) throws IOException {
+        return write(file, null == passphrase ? null : DerivedKey.derive(passphrase), body);
+    }
+
+    /**
+     * Write a snapshot file with a key derived before, see {@link #write(Path, char[], Body)}.
+     *
+     * @param file The snapshot file to write, an existing file is replaced.
+     * @param key  The key to encrypt the snapshot with, null to write it unencrypted.
+     * @param body Writes the records, it has to call {@link #finish()} when it is done.
+     * @return The result of the body.
+     * @throws IOException The body failed or writing the file failed.
+     */
+    static <T> T write(Path file, DerivedKey key, Body<T> body) throws IOException {
+        var target = file.toAbsolutePath();
+        var tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        var success = false;
+        // a leftover of an earlier write would keep its permissions, so always create the file anew
+        Files.deleteIfExists(tmp);
+        try (var channel = FileChannel.open(tmp, Set.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), ownerOnly())) {
+            var writer = new SnapshotWriter(channel, key);
+            var result = body.write(writer);
+            if (!writer.finished) throw new IllegalStateException("Snapshot has not been finished");
+            channel.force(true);
+            success = true;
+            return result;
+        } finally {
+            if (success) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private static FileAttribute<?>[] ownerOnly() {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) return new FileAttribute<?>[0];
+        return new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))};
+    }
+
+    void folder(String name) throws IOException {
+        put(FOLDER);
+        putBytes(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param type  The entry type, {@link SnapshotFormat#PASSWORD}, {@link SnapshotFormat#STREAM} or {@link SnapshotFormat#MAP}.
+     * @param key   The key of the entry.
+     * @param value The value, UTF-8 encoded for passwords.
+     */
+    void entry(byte type, String key, byte[] value) throws IOException {
+        put(type);
+        putBytes(key.getBytes(StandardCharsets.UTF_8));
+        putBytes(value);
+    }
+
+    /**
+     * Write the remaining records as the last chunk. A snapshot without a last chunk is rejected as truncated,
+     * so this must only be called after all records have been written successfully.
+     */
+    void finish() throws IOException {
+        if (finished) return;
+        writeChunk(true);
+        finished = true;
+    }
+
+    private void put(byte b) throws IOException {
+        if (!plain.hasRemaining()) writeChunk(false);
+        plain.put(b);
+    }
+
+    private void putBytes(byte[] bytes) throws IOException {
+        if (plain.remaining() < 4) writeChunk(false);
+        plain.putInt(bytes.length);
+        var offset = 0;
+        while (offset < bytes.length) {
+            if (!plain.hasRemaining()) writeChunk(false);
+            var n = Math.min(plain.remaining(), bytes.length - offset);
+            plain.put(bytes, offset, n);
+            offset += n;
+        }
+    }
+
+    private void writeChunk(boolean last) throws IOException {
+        plain.flip();
+        out.clear();
+        out.position(4);
+        if (null == cipher) {
+            out.put(plain);
+        } else {
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, nonce(noncePrefix, chunk));
+                cipher.updateAAD(aad(last));
+                cipher.doFinal(plain, out);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Could not encrypt the snapshot", e);
+            }
+        }
+        var length = out.position() - 4;
+        out.putInt(0, last ? length | LAST_CHUNK : length);
+        out.flip();
+        write(out);
+        // do not leave secrets in the buffer longer than needed
+        Arrays.fill(plain.array(), (byte) 0);
+        plain.clear();
+        chunk++;
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.purejava.kwallet;
 
 import org.freedesktop.dbus.DBusPath;
 import org.freedesktop.dbus.ObjectPath;
+import org.freedesktop.dbus.types.Variant;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -34,11 +35,31 @@ public class Static {
     public static class Convert {
 
         public static byte[] toByteArray(List<Byte> list) {
-            var result = new byte[list.size()];
-            for (var i = 0; i < list.size(); i++) {
-                result[i] = list.get(i);
+            return toByteArray((Object) list);
+        }
+
+        /**
+         * Convert the value of a d-bus arg of type "ay" (array of byte) into a byte[].
+         * Depending on how dbus-java demarshalled the reply, the value is a byte[] already, which
+         * is returned as is, a list of bytes or a variant that wraps one of the two.
+         *
+         * @param value The demarshalled d-bus value.
+         * @return The bytes or byte[0] in case the value is no array of byte.
+         */
+        public static byte[] toByteArray(Object value) {
+            if (value instanceof byte[] bytes) {
+                return bytes;
+            } else if (value instanceof Variant<?> variant) {
+                return toByteArray(variant.getValue());
+            } else if (value instanceof List<?> list) {
+                var result = new byte[list.size()];
+                var i = 0;
+                for (var b : list) {
+                    result[i++] = (Byte) b;
+                }
+                return result;
             }
-            return result;
+            return new byte[0];
         }
 
         public static String toString(byte[] bytes) {
@@ -0,0 +1,167 @@
+package org.purejava.kwallet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces requests to sync a wallet to disk. <code>sync</code> makes kwalletd write the whole wallet, so calling
+ * it after every write costs a disk write per secret. Instead, {@link #request(int, String)} defers the sync
+ * of a handle until no further request has arrived for the quiet period, but not longer than the maximum
+ * delay after the first deferred request. A burst of writes is thereby followed by a single sync.
+ * <p>
+ * Syncs are sent flagged as not expecting a reply, so they are neither awaited nor recorded as timeouts.
+ * Closing the coalescer sends all deferred syncs.
+ */
+public class SyncCoalescer implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SyncCoalescer.class);
+    public static final Duration DEFAULT_QUIET_PERIOD = Duration.ofMillis(500);
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(5);
+
+    private final KDEWallet wallet;
+    private final long quietNanos;
+    private final long maxDelayNanos;
+    private final Map<Key, Pending> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private volatile boolean closed = false;
+
+    private record Key(int handle, String appid) {
+    }
+
+    private record Pending(long first, ScheduledFuture<?> task, CompletableFuture<Void> sent) {
+    }
+
+    public SyncCoalescer(KDEWallet wallet) {
+        this(wallet, DEFAULT_QUIET_PERIOD, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param wallet      The wallet to sync.
+     * @param quietPeriod Time without further requests after which a handle gets synced.
+     * @param maxDelay    Maximum time a sync is deferred after the first request, even if requests keep arriving.
+     */
+    public SyncCoalescer(KDEWallet wallet, Duration quietPeriod, Duration maxDelay) {
+        if (quietPeriod.isNegative() || quietPeriod.isZero()) throw new IllegalArgumentException("Quiet period must be positive");
+        if (maxDelay.compareTo(quietPeriod) < 0) throw new IllegalArgumentException("Maximum delay must not be shorter than the quiet period");
+        this.wallet = wallet;
+        this.quietNanos = quietPeriod.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "kdewallet-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Request a sync of the wallet. The sync is sent once the handle has not been requested for the quiet period,
+     * at the latest after the maximum delay. After the coalescer has been closed, the sync is sent right away.
+     *
+     * @param handle Valid handle to the wallet to sync.
+     * @param appid  AppID of the app to access the wallet.
+     * @return A future completed once the sync covering this request has been sent.
+     */
+    public CompletableFuture<Void> request(int handle, String appid) {
+        requests.incrementAndGet();
+        var key = new Key(handle, appid);
+        if (closed) {
+            sync(key);
+            return CompletableFuture.completedFuture(null);
+        }
+        var rejected = new boolean[1];
+        var p = pending.compute(key, (k, previous) -> {
+            var now = System.nanoTime();
+            var first = null == previous ? now : previous.first();
+            var sent = null == previous ? new CompletableFuture<Void>() : previous.sent();
+            if (null != previous) previous.task().cancel(false);
+            var delay = Math.min(quietNanos, first + maxDelayNanos - now);
+            try {
+                return new Pending(first, scheduler.schedule(() -> fire(k), Math.max(0, delay), TimeUnit.NANOSECONDS), sent);
+            } catch (RejectedExecutionException e) {
+                // closed concurrently, a deferred sync is sent below
+                rejected[0] = true;
+                return previous;
+            }
+        });
+        if (rejected[0]) {
+            if (null == p) {
+                sync(key);
+                return CompletableFuture.completedFuture(null);
+            }
+            fire(key);
+        }
+        return p.sent();
+    }
+
+    /**
+     * Send the deferred sync of a handle now.
+     *
+     * @param handle The handle to sync.
+     * @param appid  AppID of the app to access the wallet.
+     */
+    public void flush(int handle, String appid) {
+        fire(new Key(handle, appid));
+    }
+
+    /**
+     * Send all deferred syncs now.
+     */
+    public void flush() {
+        pending.keySet().forEach(this::fire);
+    }
+
+    private void fire(Key key) {
+        var p = pending.remove(key);
+        if (null == p) return;
+        p.task().cancel(false);
+        sync(key);
+        p.sent().complete(null);
+    }
+
+    private void sync(Key key) {
+        syncs.incrementAndGet();
+        LOG.debug("Syncing wallet with handle {}", key.handle());
+        wallet.sendNoReply("sync", "is", key.handle(), key.appid());
+    }
+
+    /**
+     * Number of syncs requested so far.
+     *
+     * @return The amount of requests.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Number of syncs sent so far.
+     *
+     * @return The amount of syncs sent to kwalletd.
+     */
+    public long getSyncs() {
+        return syncs.get();
+    }
+
+    /**
+     * Send all deferred syncs and stop deferring.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        flush();
+    }
+}
@@ -0,0 +1,12 @@
+package org.purejava.kwallet;
+
+/**
+ * An entry of a wallet, as returned by {@link KDEWallet#stream(int, String)}.
+ *
+ * @param folder The folder the entry belongs to.
+ * @param key    Identifier for the entry.
+ * @param value  The content of the entry as returned by <code>readEntry</code>, i.e. passwords and maps
+ *               in their serialized form.
+ */
+public record WalletEntry(String folder, String key, byte[] value) {
+}
@@ -0,0 +1,164 @@
+package org.purejava.kwallet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Exports a complete wallet into a snapshot file. The folders are fetched with <code>entriesList</code>,
+ * <code>passwordList</code> and <code>mapList</code>, several folders at a time, and written to the file
+ * in the order of <code>folderList</code> as soon as their replies are in. Only the folders in flight are held
+ * in memory, not the whole wallet.
+ * <p>
+ * The snapshot is written to a temporary file next to the target, readable by the owner only, and moved
+ * into place when it is complete, so an interrupted export never leaves a partial snapshot behind.
+ * If a passphrase is given, the snapshot is encrypted with AES-GCM.
+ */
+public class WalletExporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WalletExporter.class);
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private final KDEWallet wallet;
+    private final int handle;
+    private final String appid;
+    private final int parallelism;
+
+    /**
+     * Number of folders and entries written to a snapshot.
+     *
+     * @param folders The amount of folders.
+     * @param entries The amount of entries in all folders.
+     */
+    public record Summary(int folders, int entries) {
+    }
+
+    /**
+     * The content of a folder, as returned by <code>entriesList</code>, <code>passwordList</code> and <code>mapList</code>.
+     */
+    record Folder(String name, Map<String, byte[]> entries, Map<String, String> passwords, Map<String, byte[]> maps) {
+
+        interface Visitor {
+            void entry(byte type, String key, byte[] value) throws IOException;
+        }
+
+        /**
+         * Read a folder with three calls sent at once.
+         *
+         * @return The folder, completes exceptionally with an {@link IOException} if one of the calls fails.
+         */
+        static CompletableFuture<Folder> fetch(KDEWallet wallet, int handle, String folder, String appid) {
+            var entries = wallet.sendAsync("entriesList", "iss", handle, folder, appid);
+            var passwords = wallet.sendAsync("passwordList", "iss", handle, folder, appid);
+            var maps = wallet.sendAsync("mapList", "iss", handle, folder, appid);
+            return CompletableFuture.allOf(entries, passwords, maps).thenApply(ignored -> {
+                if (null == entries.join() || null == passwords.join() || null == maps.join()) {
+                    throw new CompletionException(new IOException("Could not read folder " + folder));
+                }
+                return new Folder(folder, KDEWallet.getByteMap(entries.join()), KDEWallet.getStringMap(passwords.join()),
+                        KDEWallet.getByteMap(maps.join()));
+            });
+        }
+
+        /**
+         * Visit the entries with their entry type as in a snapshot: passwords UTF-8 encoded, entries that are
+         * neither a password nor a map as stream.
+         */
+        void visit(Visitor visitor) throws IOException {
+            for (var entry : entries.entrySet()) {
+                var key = entry.getKey();
+                if (passwords.containsKey(key)) {
+                    visitor.entry(SnapshotFormat.PASSWORD, key, passwords.get(key).getBytes(StandardCharsets.UTF_8));
+                } else if (maps.containsKey(key)) {
+                    visitor.entry(SnapshotFormat.MAP, key, maps.get(key));
+                } else {
+                    visitor.entry(SnapshotFormat.STREAM, key, entry.getValue());
+                }
+            }
+        }
+    }
+
+    public WalletExporter(KDEWallet wallet, int handle, String appid) {
+        this(wallet, handle, appid, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param wallet      The wallet to export.
+     * @param handle      Valid handle to the wallet to export.
+     * @param appid       AppID of the app to access the wallet.
+     * @param parallelism Maximum number of folders fetched at a time.
+     */
+    public WalletExporter(KDEWallet wallet, int handle, String appid, int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.wallet = wallet;
+        this.handle = handle;
+        this.appid = appid;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Export the wallet into an unencrypted snapshot.
+     *
+     * @param file The snapshot file to write, an existing file is replaced.
+     * @return The number of folders and entries exported.
+     * @throws IOException A folder could not be read or writing the file failed.
+     */
+    public Summary export(Path file) throws IOException {
+        return export(file, null);
+    }
+
+    /**
+     * Export the wallet into a snapshot.
+     *
+     * @param file       The snapshot file to write, an existing file is replaced.
+     * @param passphrase The passphrase to encrypt the snapshot with, null to write it unencrypted.
+     * @return The number of folders and entries exported.
+     * @throws IOException A folder could not be read or writing the file failed.
+     */
+    public Summary export(Path file, char[] passphrase) throws IOException {
+        return SnapshotWriter.write(file, passphrase, this::write);
+    }
+
+    private Summary write(SnapshotWriter writer) throws IOException {
+        var result = wallet.call("folderList", "is", handle, appid);
+        if (!result.isSuccess()) throw new IOException("Could not list the folders: " + result.error());
+        var folders = KDEWallet.contentOrEmptyList(result.parameters());
+        var pending = new ArrayDeque<CompletableFuture<Folder>>(parallelism);
+        var next = 0;
+        var entries = 0;
+        try {
+            while (next < folders.size() || !pending.isEmpty()) {
+                while (next < folders.size() && pending.size() < parallelism) {
+                    pending.add(Folder.fetch(wallet, handle, folders.get(next++), appid));
+                }
+                var folder = pending.poll().get();
+                writer.folder(folder.name());
+                folder.visit(writer::entry);
+                entries += folder.entries().size();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.forEach(future -> future.cancel(false));
+            throw new InterruptedIOException("Export interrupted");
+        } catch (ExecutionException e) {
+            pending.forEach(future -> future.cancel(false));
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause());
+        } catch (IOException e) {
+            pending.forEach(future -> future.cancel(false));
+            throw e;
+        }
+        writer.finish();
+        LOG.debug("Exported {} folders with {} entries", folders.size(), entries);
+        return new Summary(folders.size(), entries);
+    }
+}
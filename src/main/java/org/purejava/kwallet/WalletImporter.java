@@ -0,0 +1,120 @@
+package org.purejava.kwallet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+
+/**
+ * Restores a snapshot written by {@link WalletExporter} into a wallet. The snapshot is read record by record,
+ * missing folders are created and the entries are written with their entry type through a {@link BulkWriter},
+ * so many writes are in flight at a time. The wallet is synced once at the end, not after every entry.
+ * <p>
+ * Entries that exist in the wallet are overwritten, entries that are not part of the snapshot are kept.
+ */
+public class WalletImporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WalletImporter.class);
+
+    private final KDEWallet wallet;
+    private final int handle;
+    private final String appid;
+    private final int window;
+
+    /**
+     * Number of folders and entries restored from a snapshot.
+     *
+     * @param folders The amount of folders in the snapshot.
+     * @param entries The amount of entries stored successfully.
+     * @param failed  The amount of entries that could not be stored.
+     */
+    public record Summary(int folders, int entries, int failed) {
+    }
+
+    public WalletImporter(KDEWallet wallet, int handle, String appid) {
+        this(wallet, handle, appid, BulkWriter.DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param wallet The wallet to restore into.
+     * @param handle Valid handle to the wallet to restore into.
+     * @param appid  AppID of the app to access the wallet.
+     * @param window Maximum number of writes awaiting their reply.
+     */
+    public WalletImporter(KDEWallet wallet, int handle, String appid, int window) {
+        if (window < 1) throw new IllegalArgumentException("Window must be at least 1");
+        this.wallet = wallet;
+        this.handle = handle;
+        this.appid = appid;
+        this.window = window;
+    }
+
+    /**
+     * Restore an unencrypted snapshot.
+     *
+     * @param file The snapshot file to read.
+     * @return The number of folders and entries restored.
+     * @throws IOException Reading the snapshot failed or the snapshot is corrupted.
+     */
+    public Summary importFrom(Path file) throws IOException {
+        return importFrom(file, null);
+    }
+
+    /**
+     * Restore a snapshot. Entries read before a corrupted part of the snapshot is detected are stored nevertheless.
+     *
+     * @param file       The snapshot file to read.
+     * @param passphrase The passphrase the snapshot has been encrypted with, may be null for unencrypted snapshots.
+     * @return The number of folders and entries restored.
+     * @throws IOException Reading the snapshot failed, the snapshot is corrupted or the passphrase is wrong.
+     */
+    public Summary importFrom(Path file, char[] passphrase) throws IOException {
+        var result = wallet.call("folderList", "is", handle, appid);
+        if (!result.isSuccess()) throw new IOException("Could not list the folders: " + result.error());
+        var existing = new HashSet<>(KDEWallet.contentOrEmptyList(result.parameters()));
+        var folders = 0;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ);
+             var writer = new BulkWriter(wallet, handle, appid, window, null)) {
+            var reader = new SnapshotReader(channel, passphrase);
+            String folder = null;
+            try {
+                for (var item = reader.next(); null != item; item = reader.next()) {
+                    switch (item.type()) {
+                        case SnapshotFormat.FOLDER -> {
+                            folder = item.name();
+                            folders++;
+                            if (!existing.contains(folder) && !wallet.createFolder(handle, folder, appid)) {
+                                throw new IOException("Could not create folder " + folder);
+                            }
+                        }
+                        case SnapshotFormat.PASSWORD -> writer.writePassword(checked(folder), item.name(),
+                                new String(item.value(), StandardCharsets.UTF_8));
+                        case SnapshotFormat.MAP -> writer.writeMap(checked(folder), item.name(), item.value());
+                        default -> writer.writeEntry(checked(folder), item.name(), item.value(), item.type());
+                    }
+                }
+                writer.flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Import interrupted");
+            } finally {
+                // persist what has been written, even if the snapshot turned out to be corrupted. kwalletd does not
+                // reply to sync, it is queued behind the writes on the connection, so there is nothing to wait for
+                wallet.sendNoReply("sync", "is", handle, appid);
+            }
+            LOG.debug("Imported {} folders with {} entries, {} failed", folders, writer.getWritten(), writer.getFailed());
+            return new Summary(folders, writer.getWritten(), writer.getFailed());
+        }
+    }
+
+    private static String checked(String folder) throws IOException {
+        if (null == folder) throw new IOException("Snapshot entry outside of a folder");
+        return folder;
+    }
+}
@@ -0,0 +1,388 @@
+package org.purejava.kwallet;
+
+import org.purejava.kwallet.freedesktop.dbus.handlers.SignalHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Local read replica of selected folders of a wallet, persisted in an encrypted file. On construction the replica
+ * is loaded from the file into memory, so reads can be served right away without opening the wallet, which
+ * might show the unlock dialog. The wallet is opened and the replica reconciled with kwalletd in the background.
+ * Afterwards every <code>KWallet.folderUpdated</code> signal of a replicated folder refreshes that folder.
+ * The file is rewritten at most once per second while folders are refreshed, and on {@link #close()}.
+ * <p>
+ * The file is a snapshot, see {@link WalletExporter}, encrypted with the given passphrase. The key is derived
+ * only once per replica, taken over from the loaded file or derived on the first write. Reads return the state
+ * of the last reconciliation, which may lag behind the wallet. Writes have to go to the wallet,
+ * see {@link ReplicatedKWallet} to answer the reads of a {@link KWallet} from a replica.
+ */
+public class WalletReplica implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WalletReplica.class);
+    private static final Duration PERSIST_DELAY = Duration.ofSeconds(1);
+
+    private final KDEWallet wallet;
+    private final String walletName;
+    private final String appid;
+    private final Set<String> folders;
+    private final Path file;
+    private final char[] passphrase;
+    private final Map<String, Map<String, Entry>> data = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> reconciled = new CompletableFuture<>();
+    private final ScheduledExecutorService executor;
+    private final List<SignalHandler.Subscription> subscriptions;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private volatile int handle = -1;
+    private volatile boolean closed = false;
+    private final ReentrantLock lock = new ReentrantLock();
+    private SnapshotFormat.DerivedKey key;
+
+    private record Entry(byte type, byte[] value) {
+    }
+
+    /**
+     * @param wallet     The wallet to replicate folders of.
+     * @param walletName The name of the wallet.
+     * @param appid      AppID of the app to access the wallet.
+     * @param folders    The folders to replicate.
+     * @param file       The file to keep the replica in, it gets created if it does not exist.
+     * @param passphrase The passphrase to encrypt the file with. The array is copied and may be wiped afterwards.
+     */
+    public WalletReplica(KDEWallet wallet, String walletName, String appid, Collection<String> folders, Path file, char[] passphrase) {
+        this.wallet = wallet;
+        this.walletName = walletName;
+        this.appid = appid;
+        this.folders = Set.copyOf(folders);
+        this.file = file;
+        this.passphrase = Objects.requireNonNull(passphrase, "The replica has to be encrypted").clone();
+        load();
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "kdewallet-replica");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var signals = SignalHandler.getInstance();
+        this.subscriptions = List.of(
+                signals.subscribe(KWallet.folderUpdated.class,
+                        fu -> walletName.equals(fu.a) && this.folders.contains(fu.b), fu -> schedule(List.of(fu.b))),
+                signals.subscribe(KWallet.walletClosedId.class, wc -> {
+                    if (wc.handle == handle) handle = -1;
+                }),
+                signals.subscribe(KWallet.walletClosed.class, wc -> {
+                    if (walletName.equals(wc.wallet)) handle = -1;
+                }),
+                signals.subscribe(KWallet.allWalletsClosed.class, ac -> handle = -1));
+        refresh();
+    }
+
+    /**
+     * Reconcile all replicated folders with kwalletd in the background.
+     */
+    public void refresh() {
+        schedule(folders);
+    }
+
+    /**
+     * Completes when the replica has been reconciled with kwalletd for the first time.
+     *
+     * @return The future to wait for.
+     */
+    public CompletableFuture<Void> reconciled() {
+        return reconciled.copy();
+    }
+
+    public boolean isReconciled() {
+        return reconciled.isDone();
+    }
+
+    public Set<String> getFolders() {
+        return folders;
+    }
+
+    public String getWalletName() {
+        return walletName;
+    }
+
+    /**
+     * Read a password from the replica.
+     *
+     * @param folder The folder to read from.
+     * @param key    Identifier for the password.
+     * @return The password or an empty String, if the replica does not contain a password with the key.
+     */
+    public String readPassword(String folder, String key) {
+        var entry = entry(folder, key);
+        return null == entry || entry.type() != SnapshotFormat.PASSWORD ? "" : new String(entry.value(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read an entry from the replica. Passwords are returned serialized, like <code>readEntry</code> of kwalletd does.
+     *
+     * @param folder The folder to read from.
+     * @param key    Identifier for the entry.
+     * @return The entry or an empty array, if the replica does not contain the entry.
+     */
+    public byte[] readEntry(String folder, String key) {
+        var entry = entry(folder, key);
+        if (null == entry) return new byte[0];
+        if (entry.type() != SnapshotFormat.PASSWORD) return entry.value().clone();
+        var chars = new String(entry.value(), StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_16BE);
+        return ByteBuffer.allocate(4 + chars.length).putInt(chars.length).put(chars).array();
+    }
+
+    /**
+     * Read a map from the replica.
+     *
+     * @param folder The folder to read from.
+     * @param key    Identifier for the map.
+     * @return The serialized map or an empty array, if the replica does not contain a map with the key.
+     */
+    public byte[] readMap(String folder, String key) {
+        var entry = entry(folder, key);
+        return null == entry || entry.type() != SnapshotFormat.MAP ? new byte[0] : entry.value().clone();
+    }
+
+    /**
+     * @param folder The folder to list.
+     * @return The keys of the entries of the folder in the replica, sorted like kwalletd does.
+     */
+    public List<String> entryList(String folder) {
+        var entries = data.get(folder);
+        return null == entries ? List.of() : entries.keySet().stream().sorted().toList();
+    }
+
+    /**
+     * @param folder The folder to look in.
+     * @param key    Identifier for the entry.
+     * @return True, if the replica contains the entry.
+     */
+    public boolean hasEntry(String folder, String key) {
+        return null != entry(folder, key);
+    }
+
+    /**
+     * @param folder The folder.
+     * @return True, if the folder is replicated and its entries are available.
+     */
+    boolean contains(String folder) {
+        return data.containsKey(folder);
+    }
+
+    /**
+     * Drop a folder, that has been changed by the application, and reconcile it again. Until then the folder
+     * is not contained in the replica, so reads of it have to go to the wallet.
+     *
+     * @param folder The changed folder.
+     */
+    void invalidate(String folder) {
+        if (!folders.contains(folder)) return;
+        // the version is stamped while the folder is locked in the map, so a reconciliation can not put it back
+        data.compute(folder, (f, entries) -> {
+            versions.merge(f, 1L, Long::sum);
+            return null;
+        });
+        schedule(List.of(folder));
+    }
+
+    private Entry entry(String folder, String key) {
+        var entries = data.get(folder);
+        return null == entries ? null : entries.get(key);
+    }
+
+    private void schedule(Collection<String> names) {
+        var due = new ArrayList<String>();
+        for (var name : names) {
+            if (pending.add(name)) due.add(name);
+        }
+        if (due.isEmpty()) return;
+        try {
+            executor.execute(() -> {
+                pending.removeAll(due);
+                reconcile(due);
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Replica of wallet '{}' is closed", walletName);
+        }
+    }
+
+    /**
+     * Runs on the executor only, the folders are read with pipelined calls.
+     */
+    private void reconcile(List<String> names) {
+        var h = handle;
+        if (h <= 0) {
+            h = wallet.open(walletName, 0L, appid);
+            if (h <= 0) {
+                LOG.warn("Could not open wallet '{}' to reconcile the replica", walletName);
+                return;
+            }
+            if (closed) {
+                wallet.close(h, false, appid);
+                return;
+            }
+            handle = h;
+        }
+        var fetches = new ArrayList<CompletableFuture<WalletExporter.Folder>>(names.size());
+        var fetchedAt = new HashMap<String, Long>();
+        for (var name : names) {
+            fetchedAt.put(name, versions.getOrDefault(name, 0L));
+            fetches.add(WalletExporter.Folder.fetch(wallet, h, name, appid));
+        }
+        var complete = true;
+        for (var fetch : fetches) {
+            try {
+                var folder = fetch.get();
+                var entries = new HashMap<String, Entry>();
+                folder.visit((type, key, value) -> entries.put(key, new Entry(type, value)));
+                var version = fetchedAt.get(folder.name());
+                // skip folders changed while they were fetched, they have been scheduled to be reconciled again
+                data.compute(folder.name(), (f, current) -> version.equals(versions.getOrDefault(f, 0L))
+                        ? Map.copyOf(entries)
+                        : current);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | IOException e) {
+                LOG.warn("Could not reconcile replica of wallet '{}'", walletName, e);
+                complete = false;
+            }
+        }
+        persistLater();
+        if (complete && data.keySet().containsAll(folders)) reconciled.complete(null);
+    }
+
+    /**
+     * Rewrite the file after {@link #PERSIST_DELAY}, refreshes until then are written together.
+     */
+    private void persistLater() {
+        if (!dirty.compareAndSet(false, true)) return;
+        try {
+            executor.schedule(this::persist, PERSIST_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Replica of wallet '{}' is closed", walletName);
+        }
+    }
+
+    /**
+     * Rewrite the file, unless the replica has been closed. The lock keeps {@link #close()} from wiping
+     * the key while the file is written.
+     */
+    private void persist() {
+        lock.lock();
+        try {
+            if (closed || !dirty.getAndSet(false)) return;
+            write();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs with the lock held. The key is derived on the first write, unless it has been taken over
+     * from the loaded file, the passphrase is not needed afterwards.
+     */
+    private void write() {
+        try {
+            if (null == key) {
+                key = SnapshotFormat.DerivedKey.derive(passphrase);
+                Arrays.fill(passphrase, '\0');
+            }
+            SnapshotWriter.write(file, key, writer -> {
+                for (var folder : folders) {
+                    var entries = data.get(folder);
+                    if (null == entries) continue;
+                    writer.folder(folder);
+                    for (var e : entries.entrySet()) {
+                        writer.entry(e.getValue().type(), e.getKey(), e.getValue().value());
+                    }
+                }
+                writer.finish();
+                return null;
+            });
+        } catch (IOException e) {
+            LOG.error(e.toString(), e.getCause());
+        }
+    }
+
+    /**
+     * Load the replica from the file, all or nothing. A missing or unreadable file leaves the replica empty
+     * until it is reconciled.
+     */
+    private void load() {
+        if (!Files.exists(file)) return;
+        var loaded = new HashMap<String, Map<String, Entry>>();
+        SnapshotFormat.DerivedKey loadedKey;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var reader = new SnapshotReader(channel, passphrase);
+            Map<String, Entry> entries = null;
+            for (var item = reader.next(); null != item; item = reader.next()) {
+                if (item.type() == SnapshotFormat.FOLDER) {
+                    entries = folders.contains(item.name()) ? new HashMap<>() : null;
+                    if (null != entries) loaded.put(item.name(), entries);
+                } else if (null != entries) {
+                    entries.put(item.name(), new Entry(item.type(), item.value()));
+                }
+            }
+            loadedKey = reader.key();
+        } catch (IOException e) {
+            LOG.warn("Could not load replica {}, starting empty", file, e);
+            return;
+        }
+        loaded.forEach((folder, entries) -> data.put(folder, Map.copyOf(entries)));
+        if (null != loadedKey) {
+            key = loadedKey;
+            Arrays.fill(passphrase, '\0');
+        }
+        LOG.debug("Loaded {} folders of wallet '{}' from replica", loaded.size(), walletName);
+    }
+
+    /**
+     * Stop reconciling, close the handle opened by the replica, write refreshes not persisted yet
+     * and wipe the passphrase. The file is kept.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        subscriptions.forEach(SignalHandler.Subscription::close);
+        executor.shutdownNow();
+        var h = handle;
+        handle = -1;
+        if (h > 0) wallet.close(h, false, appid);
+        lock.lock();
+        try {
+            if (dirty.getAndSet(false)) write();
+            Arrays.fill(passphrase, '\0');
+            key = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
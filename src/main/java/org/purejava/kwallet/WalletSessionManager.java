@@ -0,0 +1,199 @@
+package org.purejava.kwallet;
+
+import org.purejava.kwallet.freedesktop.dbus.handlers.SignalHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * Shares wallet handles between threads. The manager holds at most one handle per wallet and appid, opens it
+ * on first use and hands out the same handle until it gets invalid. A handle gets invalid, when the kwallet daemon
+ * closes the wallet (<code>KWallet.walletClosedId</code>, <code>KWallet.walletClosed</code>,
+ * <code>KWallet.allWalletsClosed</code>) or when it was not used for the configured idle time, in which case
+ * the manager closes it.
+ * <p>
+ * Opening a wallet may show the unlock dialog, concurrent callers for the same wallet and appid wait for the
+ * first one to open it instead of opening it again.
+ */
+public class WalletSessionManager implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WalletSessionManager.class);
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+
+    private final KWallet kwallet;
+    private final long wId;
+    private final long idleNanos;
+    private final Map<SessionKey, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+    private final List<SignalHandler.Subscription> subscriptions;
+
+    private record SessionKey(String wallet, String appid) {
+    }
+
+    public WalletSessionManager(KWallet kwallet) {
+        this(kwallet, 0, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param kwallet     The wallet service to open wallets with.
+     * @param wId         The window id to associate the unlock dialog with, 0 if there is none.
+     * @param idleTimeout Time after which a handle, that has not been used, gets closed.
+     */
+    public WalletSessionManager(KWallet kwallet, long wId, Duration idleTimeout) {
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) throw new IllegalArgumentException("Idle timeout must be positive");
+        this.kwallet = kwallet;
+        this.wId = wId;
+        this.idleNanos = idleTimeout.toNanos();
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "kdewallet-session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var period = Math.max(1L, idleTimeout.toMillis() / 2);
+        this.sweeper.scheduleAtFixedRate(this::closeIdle, period, period, TimeUnit.MILLISECONDS);
+
+        var signals = SignalHandler.getInstance();
+        this.subscriptions = List.of(
+                signals.subscribe(KWallet.walletClosedId.class, wc -> drop(session -> session.handle == wc.handle)),
+                signals.subscribe(KWallet.walletClosed.class, wc -> drop(session -> session.key.wallet().equals(wc.wallet))),
+                signals.subscribe(KWallet.allWalletsClosed.class, ac -> drop(session -> true)));
+    }
+
+    /**
+     * Run an action with a valid handle to the wallet, opening the wallet if necessary. The handle does not get
+     * closed for being idle while the action is running, it must not be used after the action returned.
+     * The action gets -1 as handle, if the wallet could not be opened.
+     *
+     * @param wallet The wallet to access.
+     * @param appid  AppID of the app to access the wallet.
+     * @param action The action to perform with the handle.
+     * @param <T>    The result type of the action.
+     * @return The result of the action.
+     */
+    public <T> T withHandle(String wallet, String appid, IntFunction<T> action) {
+        var session = sessions.computeIfAbsent(new SessionKey(wallet, appid), Session::new);
+        session.leases.incrementAndGet();
+        try {
+            return action.apply(session.acquire());
+        } finally {
+            session.leases.decrementAndGet();
+            session.touch();
+        }
+    }
+
+    /**
+     * Forget the handle to the wallet without closing it, e.g. after a call failed because the handle is invalid.
+     *
+     * @param wallet The wallet.
+     * @param appid  AppID of the app that accessed the wallet.
+     */
+    public void invalidate(String wallet, String appid) {
+        var session = sessions.get(new SessionKey(wallet, appid));
+        if (null != session) session.reset();
+    }
+
+    private void drop(Predicate<Session> filter) {
+        for (var session : sessions.values()) {
+            if (filter.test(session)) session.reset();
+        }
+    }
+
+    private void closeIdle() {
+        var now = System.nanoTime();
+        for (var session : sessions.values()) {
+            if (session.leases.get() == 0 && now - session.lastUsed > idleNanos) session.closeIdle();
+        }
+    }
+
+    /**
+     * Close all handles held by this manager and stop listening to signals.
+     */
+    @Override
+    public void close() {
+        subscriptions.forEach(SignalHandler.Subscription::close);
+        sweeper.shutdownNow();
+        sessions.values().forEach(Session::close);
+        sessions.clear();
+    }
+
+    private class Session {
+
+        private final SessionKey key;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final AtomicInteger leases = new AtomicInteger();
+        private volatile int handle = -1;
+        private volatile long lastUsed = System.nanoTime();
+
+        Session(SessionKey key) {
+            this.key = key;
+        }
+
+        int acquire() {
+            touch();
+            var h = handle;
+            if (h > 0) return h;
+            lock.lock();
+            try {
+                if (handle <= 0) {
+                    handle = kwallet.open(key.wallet(), wId, key.appid());
+                    if (handle > 0) LOG.debug("Opened wallet '{}' for '{}' with handle {}", key.wallet(), key.appid(), handle);
+                }
+                return handle;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void touch() {
+            lastUsed = System.nanoTime();
+        }
+
+        void reset() {
+            handle = -1;
+        }
+
+        /**
+         * The handle is withdrawn before the leases are checked, so that a caller either sees the withdrawn
+         * handle and waits for the lock or has taken its lease before the check and keeps the handle alive.
+         */
+        void closeIdle() {
+            lock.lock();
+            try {
+                var h = handle;
+                if (h <= 0) return;
+                handle = -1;
+                if (leases.get() > 0) {
+                    handle = h;
+                    return;
+                }
+                LOG.debug("Closing idle handle {} to wallet '{}'", h, key.wallet());
+                kwallet.close(h, false, key.appid());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                var h = handle;
+                if (h <= 0) return;
+                handle = -1;
+                kwallet.close(h, false, key.appid());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.purejava.kwallet;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Spliterator over the entries of a wallet, that loads them in batches as the consumer advances. The batches are
+ * given by a list of names, folders or keys, which is split in halves for parallel streams. Only the batch being
+ * consumed is held in memory.
+ */
+final class WalletSpliterator implements Spliterator<WalletEntry> {
+
+    static final int CHARACTERISTICS = ORDERED | NONNULL | DISTINCT;
+
+    private final List<String> names;
+    private final int batch;
+    private final Function<List<String>, Iterable<WalletEntry>> loader;
+    private int origin;
+    private final int fence;
+    private Iterator<WalletEntry> current = Collections.emptyIterator();
+
+    /**
+     * @param names  The names to load the entries for.
+     * @param batch  The number of names to load at a time.
+     * @param loader Loads the entries for a batch of names.
+     */
+    WalletSpliterator(List<String> names, int batch, Function<List<String>, Iterable<WalletEntry>> loader) {
+        this(names, batch, loader, 0, names.size());
+    }
+
+    private WalletSpliterator(List<String> names, int batch, Function<List<String>, Iterable<WalletEntry>> loader,
+                              int origin, int fence) {
+        this.names = names;
+        this.batch = batch;
+        this.loader = loader;
+        this.origin = origin;
+        this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super WalletEntry> action) {
+        while (!current.hasNext()) {
+            if (origin >= fence) return false;
+            var end = Math.min(fence, origin + batch);
+            current = loader.apply(names.subList(origin, end)).iterator();
+            origin = end;
+        }
+        action.accept(current.next());
+        return true;
+    }
+
+    /**
+     * Split off the first half of the names not loaded yet, at a batch boundary. A batch that is being consumed
+     * stays with this spliterator.
+     */
+    @Override
+    public Spliterator<WalletEntry> trySplit() {
+        var remaining = fence - origin;
+        if (remaining < 2 * batch) return null;
+        var mid = origin + remaining / batch / 2 * batch;
+        var prefix = new WalletSpliterator(names, batch, loader, origin, mid);
+        prefix.current = current;
+        current = Collections.emptyIterator();
+        origin = mid;
+        return prefix;
+    }
+
+    /**
+     * @return The number of names not loaded yet, the number of entries is not known before they are loaded.
+     */
+    @Override
+    public long estimateSize() {
+        return fence - origin + (current.hasNext() ? 1 : 0);
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+}
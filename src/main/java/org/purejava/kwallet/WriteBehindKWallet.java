@@ -0,0 +1,451 @@
+package org.purejava.kwallet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for {@link #writePassword}, {@link #writeEntry}, {@link #writeMap} and {@link #removeEntry}.
+ * Mutations return 0 at once and are kept in memory, a later mutation of the same entry replaces an earlier one.
+ * The buffered mutations are sent in the background every flush interval, when more than <code>maxPending</code>
+ * entries are buffered and on {@link #flush()}. If the delegate is a {@link KDEWallet}, the calls of a flush
+ * are pipelined, at most {@link BulkWriter#DEFAULT_WINDOW} await their reply at a time.
+ * <p>
+ * Reads of entries, entry lists and folder lists see the buffered mutations. All other calls that depend on
+ * the content of a wallet, e.g. {@link #renameEntry} or {@link #removeFolder}, as well as closing and syncing
+ * a wallet flush the buffer first. A mutation that fails when it is sent is logged and counted,
+ * see {@link #getFailed()}, it can not be reported to the caller of the write.
+ */
+public class WriteBehindKWallet extends DelegatingKWallet {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindKWallet.class);
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+    public static final int DEFAULT_MAX_PENDING = 1024;
+
+    private static final int UNKNOWN = 0;
+    private static final int PASSWORD = 1;
+    private static final int STREAM = 2;
+    private static final int MAP = 3;
+    private static final int REMOVE = -1;
+
+    private final int maxPending;
+    private final Map<Key, Mutation> pending = new ConcurrentHashMap<>();
+    private final Map<Key, Mutation> inFlight = new ConcurrentHashMap<>();
+    private final ReentrantLock flushing = new ReentrantLock();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private record Key(int handle, String folder, String key) {
+    }
+
+    /**
+     * @param type      The entry type or {@link #REMOVE}.
+     * @param value     The value to write, null for removals and for passwords given as a string.
+     * @param password  The password, for entries of type {@link #PASSWORD} only.
+     * @param typed     False, if the entry type was not given and is left to kwalletd.
+     * @param appid     AppID of the app that made the mutation.
+     */
+    private record Mutation(int type, byte[] value, String password, boolean typed, String appid) {
+
+        boolean isRemoval() {
+            return type == REMOVE;
+        }
+
+        byte[] entry() {
+            if (isRemoval()) return new byte[0];
+            if (null != value) return value.clone();
+            var chars = password.getBytes(StandardCharsets.UTF_16BE);
+            return ByteBuffer.allocate(4 + chars.length).putInt(chars.length).put(chars).array();
+        }
+    }
+
+    public WriteBehindKWallet(KWallet delegate) {
+        this(delegate, DEFAULT_FLUSH_INTERVAL, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * @param delegate      The wallet to write to.
+     * @param flushInterval Time between two flushes in the background.
+     * @param maxPending    Number of buffered entries, that triggers a flush in the background right away.
+     */
+    public WriteBehindKWallet(KWallet delegate, Duration flushInterval, int maxPending) {
+        super(delegate);
+        if (flushInterval.isNegative() || flushInterval.isZero()) throw new IllegalArgumentException("Flush interval must be positive");
+        if (maxPending < 1) throw new IllegalArgumentException("At least one entry has to be buffered");
+        this.maxPending = maxPending;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "kdewallet-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var period = flushInterval.toNanos();
+        this.scheduler.scheduleWithFixedDelay(this::send, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int writePassword(int handle, String folder, String key, String value, String appid) {
+        return buffer(new Key(handle, folder, key), new Mutation(PASSWORD, null, value, true, appid));
+    }
+
+    @Override
+    public int writeEntry(int handle, String folder, String key, byte[] value, int entryType, String appid) {
+        var password = entryType == PASSWORD ? toPassword(value) : null;
+        return buffer(new Key(handle, folder, key), new Mutation(entryType, value.clone(), password, true, appid));
+    }
+
+    @Override
+    public int writeEntry(int handle, String folder, String key, byte[] value, String appid) {
+        return buffer(new Key(handle, folder, key), new Mutation(STREAM, value.clone(), null, false, appid));
+    }
+
+    @Override
+    public int writeMap(int handle, String folder, String key, byte[] value, String appid) {
+        return buffer(new Key(handle, folder, key), new Mutation(MAP, value.clone(), null, true, appid));
+    }
+
+    @Override
+    public int removeEntry(int handle, String folder, String key, String appid) {
+        return buffer(new Key(handle, folder, key), new Mutation(REMOVE, null, null, true, appid));
+    }
+
+    /**
+     * Decode a password entry, a 32 bit length in bytes followed by UTF-16 chars, as readPassword would.
+     */
+    private static String toPassword(byte[] entry) {
+        if (entry.length < 4) return "";
+        var length = ByteBuffer.wrap(entry).getInt();
+        if (length <= 0 || length % 2 != 0 || length > entry.length - 4) return "";
+        return new String(entry, 4, length, StandardCharsets.UTF_16BE);
+    }
+
+    private int buffer(Key key, Mutation mutation) {
+        pending.put(key, mutation);
+        if (scheduler.isShutdown()) {
+            // closed, write through
+            flush();
+        } else if (pending.size() > maxPending) {
+            try {
+                scheduler.execute(this::send);
+            } catch (RejectedExecutionException e) {
+                flush();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The buffered or in-flight mutation of an entry, the buffered one is the newer.
+     */
+    private Mutation lookup(int handle, String folder, String key) {
+        var k = new Key(handle, folder, key);
+        var mutation = pending.get(k);
+        return null != mutation ? mutation : inFlight.get(k);
+    }
+
+    /**
+     * The mutations of a folder, in-flight ones overridden by buffered ones.
+     */
+    private Map<String, Mutation> mutations(int handle, String folder) {
+        var result = new HashMap<String, Mutation>();
+        for (var source : List.of(inFlight, pending)) {
+            source.forEach((k, m) -> {
+                if (k.handle() == handle && k.folder().equals(folder)) result.put(k.key(), m);
+            });
+        }
+        return result;
+    }
+
+    private boolean writesTo(int handle, String folder) {
+        return mutations(handle, folder).values().stream().anyMatch(m -> !m.isRemoval());
+    }
+
+    @Override
+    public String readPassword(int handle, String folder, String key, String appid) {
+        var mutation = lookup(handle, folder, key);
+        if (null == mutation) return super.readPassword(handle, folder, key, appid);
+        return mutation.type() == PASSWORD ? mutation.password() : "";
+    }
+
+    @Override
+    public byte[] readEntry(int handle, String folder, String key, String appid) {
+        var mutation = lookup(handle, folder, key);
+        return null == mutation ? super.readEntry(handle, folder, key, appid) : mutation.entry();
+    }
+
+    @Override
+    public byte[] readMap(int handle, String folder, String key, String appid) {
+        var mutation = lookup(handle, folder, key);
+        if (null == mutation) return super.readMap(handle, folder, key, appid);
+        return mutation.type() == MAP ? mutation.value().clone() : new byte[0];
+    }
+
+    @Override
+    public boolean hasEntry(int handle, String folder, String key, String appid) {
+        var mutation = lookup(handle, folder, key);
+        return null == mutation ? super.hasEntry(handle, folder, key, appid) : !mutation.isRemoval();
+    }
+
+    @Override
+    public int entryType(int handle, String folder, String key, String appid) {
+        var mutation = lookup(handle, folder, key);
+        if (null == mutation) return super.entryType(handle, folder, key, appid);
+        return mutation.isRemoval() ? UNKNOWN : mutation.type();
+    }
+
+    @Override
+    public List<String> entryList(int handle, String folder, String appid) {
+        var mutations = mutations(handle, folder);
+        if (mutations.isEmpty()) return super.entryList(handle, folder, appid);
+        var keys = new LinkedHashSet<>(super.entryList(handle, folder, appid));
+        mutations.forEach((key, m) -> {
+            if (m.isRemoval()) keys.remove(key);
+            else keys.add(key);
+        });
+        return new ArrayList<>(keys);
+    }
+
+    @Override
+    public Map<String, byte[]> entriesList(int handle, String folder, String appid) {
+        var mutations = mutations(handle, folder);
+        if (mutations.isEmpty()) return super.entriesList(handle, folder, appid);
+        var entries = new HashMap<>(super.entriesList(handle, folder, appid));
+        mutations.forEach((key, m) -> {
+            if (m.isRemoval()) entries.remove(key);
+            else entries.put(key, m.entry());
+        });
+        return entries;
+    }
+
+    @Override
+    public Map<String, byte[]> mapList(int handle, String folder, String appid) {
+        var mutations = mutations(handle, folder);
+        if (mutations.isEmpty()) return super.mapList(handle, folder, appid);
+        var maps = new HashMap<>(super.mapList(handle, folder, appid));
+        mutations.forEach((key, m) -> {
+            if (m.type() == MAP) maps.put(key, m.value().clone());
+            else maps.remove(key);
+        });
+        return maps;
+    }
+
+    @Override
+    public Map<String, String> passwordList(int handle, String folder, String appid) {
+        var mutations = mutations(handle, folder);
+        if (mutations.isEmpty()) return super.passwordList(handle, folder, appid);
+        var passwords = new HashMap<>(super.passwordList(handle, folder, appid));
+        mutations.forEach((key, m) -> {
+            if (m.type() == PASSWORD) passwords.put(key, m.password());
+            else passwords.remove(key);
+        });
+        return passwords;
+    }
+
+    @Override
+    public boolean hasFolder(int handle, String folder, String appid) {
+        return writesTo(handle, folder) || super.hasFolder(handle, folder, appid);
+    }
+
+    @Override
+    public List<String> folderList(int handle, String appid) {
+        var folders = new LinkedHashSet<>(super.folderList(handle, appid));
+        for (var source : List.of(inFlight, pending)) {
+            source.forEach((k, m) -> {
+                if (k.handle() == handle && !m.isRemoval()) folders.add(k.folder());
+            });
+        }
+        return new ArrayList<>(folders);
+    }
+
+    @Override
+    public boolean removeFolder(int handle, String folder, String appid) {
+        flush();
+        return super.removeFolder(handle, folder, appid);
+    }
+
+    @Override
+    public int renameEntry(int handle, String folder, String oldName, String newName, String appid) {
+        flush();
+        return super.renameEntry(handle, folder, oldName, newName, appid);
+    }
+
+    @Override
+    public void sync(int handle, String appid) {
+        flush();
+        super.sync(handle, appid);
+    }
+
+    @Override
+    public int close(int handle, boolean force, String appid) {
+        flush();
+        return super.close(handle, force, appid);
+    }
+
+    @Override
+    public int close(String wallet, boolean force) {
+        flush();
+        return super.close(wallet, force);
+    }
+
+    @Override
+    public void closeAllWallets() {
+        flush();
+        super.closeAllWallets();
+    }
+
+    /**
+     * Send all buffered mutations and wait for their replies.
+     *
+     * @return True, if all mutations sent have been stored successfully.
+     */
+    public boolean flush() {
+        var replies = send();
+        try {
+            CompletableFuture.allOf(replies.toArray(CompletableFuture[]::new)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while waiting for buffered writes");
+            return false;
+        } catch (ExecutionException e) {
+            LOG.error(e.toString(), e.getCause());
+            return false;
+        }
+        return replies.stream().allMatch(reply -> reply.join() == 0);
+    }
+
+    /**
+     * Take the buffered mutations and send them. Sending is serialized, so that the mutations of an entry reach
+     * kwalletd in the order they were made. A mutation stays visible to reads until its reply has arrived.
+     *
+     * @return The replies of the mutations sent.
+     */
+    private List<CompletableFuture<Integer>> send() {
+        var replies = new ArrayList<CompletableFuture<Integer>>();
+        flushing.lock();
+        try {
+            var batch = new LinkedHashMap<Key, Mutation>();
+            for (var key : pending.keySet()) {
+                var mutation = pending.get(key);
+                if (null == mutation) continue;
+                // publish as in flight before it disappears from the buffer, so reads never miss it
+                inFlight.put(key, mutation);
+                pending.remove(key, mutation);
+                batch.put(key, mutation);
+            }
+            if (batch.isEmpty()) return replies;
+            var window = new Semaphore(BulkWriter.DEFAULT_WINDOW);
+            for (var e : batch.entrySet()) {
+                var key = e.getKey();
+                var mutation = e.getValue();
+                window.acquireUninterruptibly();
+                var reply = send(key, mutation)
+                        .exceptionally(t -> {
+                            LOG.error(t.toString(), t.getCause());
+                            return -1;
+                        })
+                        .thenApply(result -> {
+                            window.release();
+                            inFlight.remove(key, mutation);
+                            if (result == 0) {
+                                written.incrementAndGet();
+                            } else {
+                                failed.incrementAndGet();
+                                LOG.warn("Buffered write of {}/{} failed", key.folder(), key.key());
+                            }
+                            return result;
+                        });
+                replies.add(reply);
+            }
+            LOG.debug("Flushed {} buffered writes", batch.size());
+        } finally {
+            flushing.unlock();
+        }
+        return replies;
+    }
+
+    private CompletableFuture<Integer> send(Key key, Mutation m) {
+        if (delegate instanceof KDEWallet wallet) {
+            var async = wallet.async();
+            return switch (m.type()) {
+                case REMOVE -> async.removeEntry(key.handle(), key.folder(), key.key(), m.appid());
+                case PASSWORD -> null == m.value()
+                        ? async.writePassword(key.handle(), key.folder(), key.key(), m.password(), m.appid())
+                        : async.writeEntry(key.handle(), key.folder(), key.key(), m.value(), m.type(), m.appid());
+                case MAP -> async.writeMap(key.handle(), key.folder(), key.key(), m.value(), m.appid());
+                default -> m.typed()
+                        ? async.writeEntry(key.handle(), key.folder(), key.key(), m.value(), m.type(), m.appid())
+                        : async.writeEntry(key.handle(), key.folder(), key.key(), m.value(), m.appid());
+            };
+        }
+        try {
+            return CompletableFuture.completedFuture(switch (m.type()) {
+                case REMOVE -> delegate.removeEntry(key.handle(), key.folder(), key.key(), m.appid());
+                case PASSWORD -> null == m.value()
+                        ? delegate.writePassword(key.handle(), key.folder(), key.key(), m.password(), m.appid())
+                        : delegate.writeEntry(key.handle(), key.folder(), key.key(), m.value(), m.type(), m.appid());
+                case MAP -> delegate.writeMap(key.handle(), key.folder(), key.key(), m.value(), m.appid());
+                default -> m.typed()
+                        ? delegate.writeEntry(key.handle(), key.folder(), key.key(), m.value(), m.type(), m.appid())
+                        : delegate.writeEntry(key.handle(), key.folder(), key.key(), m.value(), m.appid());
+            });
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Number of buffered entries not sent yet.
+     *
+     * @return The amount of buffered entries.
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Number of mutations stored successfully so far.
+     *
+     * @return The amount of successful writes.
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * Number of mutations that could not be stored so far.
+     *
+     * @return The amount of failed writes.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Send all buffered mutations, stop flushing in the background and close the delegate.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        flush();
+        super.close();
+    }
+}
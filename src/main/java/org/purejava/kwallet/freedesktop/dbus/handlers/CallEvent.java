@@ -0,0 +1,74 @@
+package org.purejava.kwallet.freedesktop.dbus.handlers;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.freedesktop.dbus.messages.Message;
+import org.purejava.kwallet.metrics.CallOutcome;
+
+/**
+ * JFR event for a method call on the kwallet daemon, from sending the call until the reply has been received.
+ * Disabled by default, enable it in the settings of the recording, e.g. in a settings file created with
+ * <code>jfr configure org.purejava.kwallet.Call#enabled=true</code>, or with
+ * <code>Recording.enable("org.purejava.kwallet.Call")</code>.
+ */
+@Name("org.purejava.kwallet.Call")
+@Label("Wallet Call")
+@Category({"KDE Wallet", "D-Bus"})
+@Description("Method call on the kwallet daemon")
+@Enabled(false)
+@StackTrace(false)
+final class CallEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Signature")
+    String signature;
+
+    @Label("Status")
+    @Description("SUCCESS, ERROR or TIMEOUT")
+    String status;
+
+    @Label("Error")
+    @Description("Name of the D-Bus error, if the call has been answered with an error")
+    String error;
+
+    @Label("Request Size")
+    @DataAmount
+    long requestSize;
+
+    @Label("Reply Size")
+    @DataAmount
+    long replySize;
+
+    /**
+     * End the event and commit it, if it is enabled and passes the threshold. The fields are filled in only then,
+     * so a disabled event costs nothing but its allocation, which the JIT removes.
+     */
+    static void commit(CallEvent event, String method, String signature, CallOutcome outcome, Message request, Message reply) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.method = method;
+        event.signature = signature;
+        event.status = outcome.name();
+        event.error = reply instanceof org.freedesktop.dbus.messages.Error ? reply.getName() : null;
+        event.requestSize = size(request);
+        event.replySize = size(reply);
+        event.commit();
+    }
+
+    private static long size(Message message) {
+        if (null == message) return 0;
+        var size = 0L;
+        for (var part : message.getWireData()) {
+            if (null != part) size += part.length;
+        }
+        return size;
+    }
+}
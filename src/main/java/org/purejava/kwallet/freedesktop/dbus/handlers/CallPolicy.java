@@ -0,0 +1,82 @@
+package org.purejava.kwallet.freedesktop.dbus.handlers;
+
+import java.time.Duration;
+
+/**
+ * How long to wait for the reply to a method call and whether to repeat the call, if it fails.
+ * <p>
+ * Every attempt waits for at most <code>timeout</code>. Failed attempts are repeated up to <code>maxAttempts</code>
+ * times in total, with a pause starting at <code>backoff</code> and doubling up to <code>maxBackoff</code>.
+ * The <code>deadline</code> limits the time spent on all attempts and pauses together. Only calls without side
+ * effects should be repeated.
+ *
+ * @param timeout     Time to wait for the reply of a single attempt.
+ * @param deadline    Time to spend on the call in total, null for no limit besides the timeouts.
+ * @param maxAttempts Maximum number of attempts, 1 to send the call only once.
+ * @param backoff     Pause before the first repetition.
+ * @param maxBackoff  Maximum pause between two attempts.
+ */
+public record CallPolicy(Duration timeout, Duration deadline, int maxAttempts, Duration backoff, Duration maxBackoff) {
+
+    /**
+     * Single attempt with a timeout of two seconds.
+     */
+    public static final CallPolicy DEFAULT = timeout(Duration.ofMillis(2000));
+
+    /**
+     * Short timeouts and up to three attempts within two seconds, for reads that are usually answered quickly.
+     */
+    public static final CallPolicy READ = timeout(Duration.ofMillis(500))
+            .withDeadline(Duration.ofMillis(2000))
+            .withRetries(3, Duration.ofMillis(50), Duration.ofMillis(400));
+
+    /**
+     * Single attempt with a timeout of two minutes, for calls that may wait for the user, e.g. to unlock a wallet.
+     */
+    public static final CallPolicy INTERACTIVE = timeout(Duration.ofMinutes(2));
+
+    public CallPolicy {
+        if (null == timeout || timeout.isNegative() || timeout.isZero()) throw new IllegalArgumentException("Timeout must be positive");
+        if (null != deadline && (deadline.isNegative() || deadline.isZero())) throw new IllegalArgumentException("Deadline must be positive");
+        if (maxAttempts < 1) throw new IllegalArgumentException("At least one attempt is required");
+        if (null == backoff || backoff.isNegative()) throw new IllegalArgumentException("Backoff must not be negative");
+        if (null == maxBackoff || maxBackoff.compareTo(backoff) < 0) throw new IllegalArgumentException("Maximum backoff must not be less than the backoff");
+    }
+
+    /**
+     * A single attempt.
+     *
+     * @param timeout Time to wait for the reply.
+     * @return The policy.
+     */
+    public static CallPolicy timeout(Duration timeout) {
+        return new CallPolicy(timeout, null, 1, Duration.ZERO, Duration.ZERO);
+    }
+
+    public CallPolicy withTimeout(Duration timeout) {
+        return new CallPolicy(timeout, deadline, maxAttempts, backoff, maxBackoff);
+    }
+
+    public CallPolicy withDeadline(Duration deadline) {
+        return new CallPolicy(timeout, deadline, maxAttempts, backoff, maxBackoff);
+    }
+
+    public CallPolicy withRetries(int maxAttempts, Duration backoff, Duration maxBackoff) {
+        return new CallPolicy(timeout, deadline, maxAttempts, backoff, maxBackoff);
+    }
+
+    /**
+     * Pause before repeating a call.
+     *
+     * @param attempt The number of the failed attempt, starting with 1.
+     * @return The pause in nanoseconds.
+     */
+    long backoffNanos(int attempt) {
+        var pause = backoff.toNanos();
+        var max = maxBackoff.toNanos();
+        for (var i = 1; i < attempt && pause < max; i++) {
+            pause *= 2;
+        }
+        return Math.min(pause, max);
+    }
+}
@@ -0,0 +1,26 @@
+package org.purejava.kwallet.freedesktop.dbus.handlers;
+
+import org.purejava.kwallet.metrics.CallOutcome;
+
+/**
+ * Result of a method call, that tells a reply apart from an error and from a missing reply.
+ *
+ * @param outcome    How the call ended, after the last attempt.
+ * @param parameters The parameters of the reply, null if there is no reply.
+ * @param error      The name of the D-Bus error or the reason the call could not be sent, null on success.
+ * @param attempts   Number of attempts made.
+ */
+public record CallResult(CallOutcome outcome, Object[] parameters, String error, int attempts) {
+
+    public boolean isSuccess() {
+        return outcome == CallOutcome.SUCCESS;
+    }
+
+    public boolean isTimeout() {
+        return outcome == CallOutcome.TIMEOUT;
+    }
+
+    public boolean isError() {
+        return outcome == CallOutcome.ERROR;
+    }
+}
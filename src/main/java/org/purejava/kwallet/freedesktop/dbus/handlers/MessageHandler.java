@@ -2,18 +2,50 @@ package org.purejava.kwallet.freedesktop.dbus.handlers;
 
 import org.freedesktop.dbus.connections.impl.DBusConnection;
 import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.CallbackHandler;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.messages.constants.Flags;
 import org.freedesktop.dbus.types.Variant;
 import org.purejava.kwallet.Static;
+import org.purejava.kwallet.metrics.CallOutcome;
+import org.purejava.kwallet.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class MessageHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(MessageHandler.class);
+    private static final long REPLY_TIMEOUT = 2000L;
+    private static final Set<String> PERMANENT_ERRORS = Set.of(
+            "org.freedesktop.DBus.Error.UnknownMethod",
+            "org.freedesktop.DBus.Error.UnknownObject",
+            "org.freedesktop.DBus.Error.InvalidArgs",
+            "org.freedesktop.DBus.Error.AccessDenied");
+    private static final Method RAW_REPLY;
+
+    static {
+        try {
+            RAW_REPLY = RawReply.class.getMethod("reply");
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     private DBusConnection connection;
+    private volatile CallPolicy defaultPolicy = CallPolicy.DEFAULT;
+    private final Map<String, CallPolicy> policies = new ConcurrentHashMap<>();
 
     public MessageHandler(DBusConnection connection) {
         this.connection = connection;
@@ -26,42 +58,210 @@ public class MessageHandler {
         }
     }
 
+    /**
+     * Send a method call according to the policy of the method, see {@link #setPolicy(String, CallPolicy)}.
+     *
+     * @return The parameters of the reply, null if the call failed or timed out.
+     * @see #call(String, String, String, String, CallPolicy, String, Object...)
+     */
     public Object[] send(String service, String path, String iface, String method, String signature, Object... args) {
-        try {
-            var msgFactory = connection.getMessageFactory();
-            var message = msgFactory.createMethodCall(service, path, iface, method, (byte) 0, signature, args);
+        return call(service, path, iface, method, getPolicy(method), signature, args).parameters();
+    }
+
+    /**
+     * Send a method call and wait for the reply according to the given policy.
+     *
+     * @param service   The D-Bus service to call.
+     * @param path      The object path of the service.
+     * @param iface     The interface that declares the method.
+     * @param method    The method to call.
+     * @param policy    Timeout, deadline and retries of the call.
+     * @param signature The D-Bus signature of the arguments.
+     * @param args      The arguments of the method call.
+     * @return The result of the last attempt.
+     */
+    public CallResult call(String service, String path, String iface, String method, CallPolicy policy, String signature, Object... args) {
+        var deadline = null == policy.deadline() ? Long.MAX_VALUE : System.nanoTime() + policy.deadline().toNanos();
+        for (var attempt = 1; ; attempt++) {
+            var timeout = Math.min(policy.timeout().toNanos(), deadline - System.nanoTime());
+            var result = attempt(service, path, iface, method, signature, timeout, attempt, args);
+            if (result.isSuccess() || attempt >= policy.maxAttempts() || PERMANENT_ERRORS.contains(result.error())) {
+                return result;
+            }
+            var pause = policy.backoffNanos(attempt);
+            if (deadline - System.nanoTime() <= pause) return result;
+            LOG.debug("Repeating {} after {} in {} ms", method, result.outcome(), TimeUnit.NANOSECONDS.toMillis(pause));
+            try {
+                TimeUnit.NANOSECONDS.sleep(pause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result;
+            }
+        }
+    }
 
-            if (LOG.isTraceEnabled()) LOG.trace(String.valueOf(message));
+    private CallResult attempt(String service, String path, String iface, String method, String signature,
+                               long timeoutNanos, int attempt, Object... args) {
+        var event = new CallEvent();
+        event.begin();
+        var start = System.nanoTime();
+        var outcome = CallOutcome.ERROR;
+        MethodCall message = null;
+        Message reply = null;
+        Object[] parameters = null;
+        String error = null;
+        try {
+            message = createMethodCall(service, path, iface, method, signature, args);
+            var waiter = new ReplyWaiter(message);
+            connection.queueCallback(message, RAW_REPLY, waiter);
             connection.sendMessage(message);
 
-            var response = message.getReply(2000L);
-            if (LOG.isTraceEnabled()) LOG.trace(String.valueOf(response));
+            reply = waiter.await(timeoutNanos);
+            outcome = outcome(reply);
+            if (reply instanceof org.freedesktop.dbus.messages.Error) error = reply.getName();
+            parameters = parameters(reply);
 
-            Object[] parameters = null;
-            if (response != null) {
-                parameters = response.getParameters();
-                LOG.debug(Arrays.deepToString(parameters));
-            }
+        } catch (DBusException e) {
+            LOG.error("Unexpected D-Bus response:", e);
+            if (null == error) error = e.getMessage();
+        } finally {
+            Metrics.recordCall(method, outcome, System.nanoTime() - start);
+            CallEvent.commit(event, method, signature, outcome, message, reply);
+        }
 
-            if (response instanceof org.freedesktop.dbus.messages.Error) {
-                var error = response.getName();
-                switch (error) {
-                    case "org.freedesktop.DBus.Error.NoReply",
-                         "org.freedesktop.DBus.Error.UnknownMethod",
-                         "org.freedesktop.dbus.exceptions.NotConnected" -> {
-                        LOG.debug(error);
-                        return null;
-                    }
-                    default -> throw new DBusException(error);
-                }
-            }
-            return parameters;
+        return new CallResult(outcome, parameters, error, attempt);
+    }
 
+    /**
+     * Set the policy for all methods without a policy of their own.
+     *
+     * @param policy The policy, {@link CallPolicy#DEFAULT} initially.
+     */
+    public void setPolicy(CallPolicy policy) {
+        defaultPolicy = policy;
+    }
+
+    /**
+     * Set the policy for a method.
+     *
+     * @param method The name of the D-Bus method.
+     * @param policy The policy, null to use the default policy.
+     */
+    public void setPolicy(String method, CallPolicy policy) {
+        if (null == policy) {
+            policies.remove(method);
+        } else {
+            policies.put(method, policy);
+        }
+    }
+
+    public CallPolicy getPolicy(String method) {
+        return policies.getOrDefault(method, defaultPolicy);
+    }
+
+    /**
+     * Send a method call without waiting for the reply. The returned future is completed from
+     * the reply callback of the connection with the same parameters {@link #send} would return,
+     * including <code>null</code> for missing or ignored replies. The call is sent once, the timeout
+     * or the deadline of the policy of the method, whichever is shorter, applies.
+     *
+     * @param service   The D-Bus service to call.
+     * @param path      The object path of the service.
+     * @param iface     The interface that declares the method.
+     * @param method    The method to call.
+     * @param signature The D-Bus signature of the arguments.
+     * @param args      The arguments of the method call.
+     * @return A future completed with the reply parameters.
+     */
+    public CompletableFuture<Object[]> sendAsync(String service, String path, String iface, String method, String signature, Object... args) {
+        var future = new CompletableFuture<Object[]>();
+        try {
+            var message = createMethodCall(service, path, iface, method, signature, args);
+            var callback = new ReplyCallback(method, signature, message, future);
+            connection.queueCallback(message, RAW_REPLY, callback);
+            connection.sendMessage(message);
+            var policy = getPolicy(method);
+            var timeout = null == policy.deadline() || policy.deadline().compareTo(policy.timeout()) > 0
+                    ? policy.timeout()
+                    : policy.deadline();
+            future.completeOnTimeout(null, timeout.toMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((reply, e) -> callback.recordTimeout());
         } catch (DBusException e) {
             LOG.error("Unexpected D-Bus response:", e);
+            Metrics.recordCall(method, CallOutcome.ERROR, 0L);
+            future.complete(null);
         }
+        return future;
+    }
 
-        return null;
+    /**
+     * Send a method call the receiver does not answer, e.g. <code>sync</code>. The call is flagged as not
+     * expecting a reply, so neither the bus nor the receiver sends one and no reply is awaited. Such calls
+     * are recorded in the metrics only if they could not be sent.
+     *
+     * @param service   The D-Bus service to call.
+     * @param path      The object path of the service.
+     * @param iface     The interface that declares the method.
+     * @param method    The method to call.
+     * @param signature The D-Bus signature of the arguments.
+     * @param args      The arguments of the method call.
+     * @return True if the call has been sent, false otherwise.
+     */
+    public boolean sendNoReply(String service, String path, String iface, String method, String signature, Object... args) {
+        try {
+            var message = createMethodCall(service, path, iface, method, Flags.NO_REPLY_EXPECTED, signature, args);
+            connection.sendMessage(message);
+            return true;
+        } catch (DBusException e) {
+            LOG.error("Unexpected D-Bus response:", e);
+            Metrics.recordCall(method, CallOutcome.ERROR, 0L);
+            return false;
+        }
+    }
+
+    private MethodCall createMethodCall(String service, String path, String iface, String method, String signature, Object... args) throws DBusException {
+        return createMethodCall(service, path, iface, method, (byte) 0, signature, args);
+    }
+
+    private MethodCall createMethodCall(String service, String path, String iface, String method, byte flags, String signature, Object... args) throws DBusException {
+        var msgFactory = connection.getMessageFactory();
+        var message = msgFactory.createMethodCall(service, path, iface, method, flags, signature, args);
+        if (LOG.isTraceEnabled()) LOG.trace(String.valueOf(message));
+        return message;
+    }
+
+    private static CallOutcome outcome(Message response) {
+        if (null == response) return CallOutcome.TIMEOUT;
+        if (response instanceof org.freedesktop.dbus.messages.Error) {
+            return "org.freedesktop.DBus.Error.NoReply".equals(response.getName())
+                    ? CallOutcome.TIMEOUT
+                    : CallOutcome.ERROR;
+        }
+        return CallOutcome.SUCCESS;
+    }
+
+    private Object[] parameters(Message response) throws DBusException {
+        if (LOG.isTraceEnabled()) LOG.trace(String.valueOf(response));
+
+        Object[] parameters = null;
+        if (response != null) {
+            parameters = response.getParameters();
+            LOG.debug(Arrays.deepToString(parameters));
+        }
+
+        if (response instanceof org.freedesktop.dbus.messages.Error) {
+            var error = response.getName();
+            switch (error) {
+                case "org.freedesktop.DBus.Error.NoReply",
+                     "org.freedesktop.DBus.Error.UnknownMethod",
+                     "org.freedesktop.dbus.exceptions.NotConnected" -> {
+                    LOG.debug(error);
+                    return null;
+                }
+                default -> throw new DBusException(error);
+            }
+        }
+        return parameters;
     }
 
     public Variant getProperty(String service, String path, String iface, String property) {
@@ -85,4 +285,108 @@ public class MessageHandler {
         return connection;
     }
 
+    /**
+     * Replies are decoded from the raw message, the callback only signals their arrival.
+     */
+    private interface RawReply {
+        Object[] reply();
+    }
+
+    /**
+     * Waits for the reply to a blocking call. <code>MethodCall.getReply</code> waits on the monitor of the call,
+     * which pins a virtual thread to its carrier. The waiter is completed from the reply callback of the connection
+     * instead and parks the waiting thread.
+     */
+    private static final class ReplyWaiter implements CallbackHandler<Object> {
+
+        private final MethodCall message;
+        private final CompletableFuture<Message> reply = new CompletableFuture<>();
+
+        ReplyWaiter(MethodCall message) {
+            this.message = message;
+        }
+
+        @Override
+        public void handle(Object ignored) {
+            reply.complete(message.getReply(REPLY_TIMEOUT));
+        }
+
+        @Override
+        public void handleError(DBusExecutionException e) {
+            reply.complete(message.getReply(REPLY_TIMEOUT));
+        }
+
+        /**
+         * @return The reply or null, if no reply has been received in time.
+         */
+        Message await(long timeoutNanos) {
+            // replies created locally, e.g. when the connection is closed, do not trigger the callback
+            if (message.hasReply()) return message.getReply(REPLY_TIMEOUT);
+            try {
+                return reply.get(Math.max(0L, timeoutNanos), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                LOG.debug("No reply to {}", message.getName());
+            }
+            return message.hasReply() ? message.getReply(REPLY_TIMEOUT) : null;
+        }
+    }
+
+    private class ReplyCallback implements CallbackHandler<Object> {
+
+        private final String method;
+        private final String signature;
+        private final MethodCall message;
+        private final CompletableFuture<Object[]> future;
+        private final CallEvent event = new CallEvent();
+        private final long start = System.nanoTime();
+        private volatile boolean replied = false;
+
+        ReplyCallback(String method, String signature, MethodCall message, CompletableFuture<Object[]> future) {
+            this.method = method;
+            this.signature = signature;
+            this.message = message;
+            this.future = future;
+            event.begin();
+        }
+
+        @Override
+        public void handle(Object ignored) {
+            complete();
+        }
+
+        @Override
+        public void handleError(DBusExecutionException e) {
+            complete();
+        }
+
+        private void complete() {
+            if (future.isDone()) return;
+            replied = true;
+            var outcome = CallOutcome.ERROR;
+            Message reply = null;
+            try {
+                reply = message.getReply(REPLY_TIMEOUT);
+                outcome = outcome(reply);
+                future.complete(parameters(reply));
+            } catch (DBusException e) {
+                LOG.error("Unexpected D-Bus response:", e);
+                future.complete(null);
+            } finally {
+                Metrics.recordCall(method, outcome, System.nanoTime() - start);
+                CallEvent.commit(event, method, signature, outcome, message, reply);
+            }
+        }
+
+        /**
+         * Calls completed by the timeout never reach the callback and are recorded here.
+         */
+        void recordTimeout() {
+            if (replied) return;
+            Metrics.recordCall(method, CallOutcome.TIMEOUT, System.nanoTime() - start);
+            CallEvent.commit(event, method, signature, CallOutcome.TIMEOUT, message, null);
+        }
+    }
+
 }
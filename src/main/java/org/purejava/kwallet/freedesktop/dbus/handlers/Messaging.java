@@ -9,6 +9,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 abstract public class Messaging {
 
@@ -43,6 +44,57 @@ abstract public class Messaging {
         return msg.send(serviceName, objectPath, interfaceName, method, signature, arguments);
     }
 
+    /**
+     * Send a method call according to the policy of the method and tell a reply apart from an error
+     * and from a timeout.
+     *
+     * @param method    The method to call.
+     * @param signature The D-Bus signature of the arguments.
+     * @param arguments The arguments of the method call.
+     * @return The result of the call.
+     */
+    public CallResult call(String method, String signature, Object... arguments) {
+        return msg.call(serviceName, objectPath, interfaceName, method, msg.getPolicy(method), signature, arguments);
+    }
+
+    public CallResult call(CallPolicy policy, String method, String signature, Object... arguments) {
+        return msg.call(serviceName, objectPath, interfaceName, method, policy, signature, arguments);
+    }
+
+    /**
+     * Set the timeout, deadline and retries of a method.
+     *
+     * @param method The name of the D-Bus method.
+     * @param policy The policy, null to use the default policy.
+     */
+    public void setCallPolicy(String method, CallPolicy policy) {
+        msg.setPolicy(method, policy);
+    }
+
+    public void setCallPolicy(CallPolicy policy) {
+        msg.setPolicy(policy);
+    }
+
+    public CompletableFuture<Object[]> sendAsync(String method) {
+        return msg.sendAsync(serviceName, objectPath, interfaceName, method, "");
+    }
+
+    public CompletableFuture<Object[]> sendAsync(String method, String signature, Object... arguments) {
+        return msg.sendAsync(serviceName, objectPath, interfaceName, method, signature, arguments);
+    }
+
+    /**
+     * Send a method call without asking for a reply, see {@link MessageHandler#sendNoReply}.
+     *
+     * @param method    The method to call.
+     * @param signature The D-Bus signature of the arguments.
+     * @param arguments The arguments of the method call.
+     * @return True if the call has been sent, false otherwise.
+     */
+    public boolean sendNoReply(String method, String signature, Object... arguments) {
+        return msg.sendNoReply(serviceName, objectPath, interfaceName, method, signature, arguments);
+    }
+
     protected Variant getProperty(String property) {
         return msg.getProperty(serviceName, objectPath, interfaceName, property);
     }
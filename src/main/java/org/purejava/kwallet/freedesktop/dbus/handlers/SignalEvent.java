@@ -0,0 +1,41 @@
+package org.purejava.kwallet.freedesktop.dbus.handlers;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.freedesktop.dbus.messages.DBusSignal;
+
+/**
+ * JFR event for a signal dispatched by {@link SignalHandler}, its duration is the time spent in the listeners.
+ * Disabled by default, like {@link CallEvent}.
+ */
+@Name("org.purejava.kwallet.Signal")
+@Label("Wallet Signal")
+@Category({"KDE Wallet", "D-Bus"})
+@Description("Signal of the kwallet daemon dispatched to the listeners")
+@Enabled(false)
+@StackTrace(false)
+final class SignalEvent extends Event {
+
+    @Label("Signal")
+    String signal;
+
+    @Label("Path")
+    String path;
+
+    @Label("Wallet")
+    String wallet;
+
+    static void commit(SignalEvent event, DBusSignal signal, String wallet) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.signal = signal.getClass().getSimpleName();
+        event.path = signal.getPath();
+        event.wallet = wallet;
+        event.commit();
+    }
+}
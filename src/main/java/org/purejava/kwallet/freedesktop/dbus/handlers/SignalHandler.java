@@ -5,6 +5,7 @@ import org.freedesktop.dbus.exceptions.DBusException;
 import org.freedesktop.dbus.interfaces.DBusSigHandler;
 import org.freedesktop.dbus.messages.DBusSignal;
 import org.purejava.kwallet.KWallet;
+import org.purejava.kwallet.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,19 +14,44 @@ import java.beans.PropertyChangeSupport;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class SignalHandler implements DBusSigHandler {
 
     private static SignalHandler instance = new SignalHandler();
 
     private static final Logger LOG = LoggerFactory.getLogger(SignalHandler.class);
+    public static final int DEFAULT_HISTORY_SIZE = 250;
+    public static final int DEFAULT_BUFFER_SIZE = Flow.defaultBufferSize();
 
     private PropertyChangeSupport support;
     private DBusConnection connection = null;
     private List<Class<? extends DBusSignal>> registered = new ArrayList();
-    private DBusSignal[] handled = new DBusSignal[250];
-    private int count = 0;
+    private volatile SignalHistory handled = new SignalHistory(DEFAULT_HISTORY_SIZE);
+    private final Queue<Waiter<?>> waiters = new ConcurrentLinkedQueue<>();
+    private final Map<Class<? extends DBusSignal>, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+    private record Waiter<S extends DBusSignal>(Class<S> type, String path, Predicate<? super S> filter,
+                                                CompletableFuture<S> future) {
+        /**
+         * @return True, if the waiter is done with and can be removed.
+         */
+        boolean offer(DBusSignal signal) {
+            if (future.isDone()) return true;
+            if (!signal.getClass().equals(type)) return false;
+            if (null != path && !path.equals(signal.getPath())) return false;
+            var s = type.cast(signal);
+            try {
+                if (!filter.test(s)) return false;
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                return true;
+            }
+            future.complete(s);
+            return true;
+        }
+    }
 
     private SignalHandler() {
         support = new PropertyChangeSupport(this);
@@ -43,6 +69,122 @@ public class SignalHandler implements DBusSigHandler {
         support.removePropertyChangeListener(pcl);
     }
 
+    /**
+     * Subscribe to a single type of signal. The listener only gets called for signals of exactly that type,
+     * listeners are looked up by the class of the handled signal.
+     *
+     * @param s        The type of signal to listen to.
+     * @param listener Gets called with every handled signal of that type.
+     * @param <S>      The type of signal to listen to.
+     * @return The subscription, close it to stop listening.
+     */
+    public <S extends DBusSignal> Subscription subscribe(Class<S> s, Consumer<? super S> listener) {
+        return subscribe(s, null, listener);
+    }
+
+    /**
+     * Subscribe to a single type of signal, that meets the given criteria.
+     * @see SignalHandler#forWallet(String)
+     * @see SignalHandler#forFolder(String, String)
+     *
+     * @param s        The type of signal to listen to.
+     * @param filter   Criteria the signal has to meet, null for all signals of that type.
+     * @param listener Gets called with every handled signal of that type, that passes the filter.
+     * @param <S>      The type of signal to listen to.
+     * @return The subscription, close it to stop listening.
+     */
+    public <S extends DBusSignal> Subscription subscribe(Class<S> s, Predicate<? super S> filter, Consumer<? super S> listener) {
+        var subscription = new Subscription(s, signal -> {
+            var signalOfType = s.cast(signal);
+            if (null == filter || filter.test(signalOfType)) listener.accept(signalOfType);
+        });
+        subscriptions.computeIfAbsent(s, type -> new CopyOnWriteArrayList<>()).add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Publish a single type of signal, see {@link #publisher(Class, int, SignalPublisher.Overflow, Executor)}.
+     * Subscribers get a buffer of {@link #DEFAULT_BUFFER_SIZE} signals, that drops the oldest signal when full,
+     * and are called from the common pool.
+     *
+     * @param s   The type of signal to publish.
+     * @param <S> The type of signal to publish.
+     * @return The publisher.
+     */
+    public <S extends DBusSignal> SignalPublisher<S> publisher(Class<S> s) {
+        return publisher(s, DEFAULT_BUFFER_SIZE, SignalPublisher.Overflow.DROP_OLDEST, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Publish a single type of signal with backpressure. Each subscriber gets its own buffer, signals are handed
+     * to the buffers on the signal thread and delivered to the subscribers from the executor, as requested.
+     * Every subscriber receives the signals handled after it subscribed.
+     *
+     * @param s          The type of signal to publish.
+     * @param bufferSize Maximum number of signals buffered per subscriber.
+     * @param overflow   What to discard when a buffer is full.
+     * @param executor   Executor to call the subscribers from.
+     * @param <S>        The type of signal to publish.
+     * @return The publisher.
+     */
+    public <S extends DBusSignal> SignalPublisher<S> publisher(Class<S> s, int bufferSize, SignalPublisher.Overflow overflow,
+                                                               Executor executor) {
+        return new SignalPublisher<>(this, s, bufferSize, overflow, executor);
+    }
+
+    /**
+     * Criteria for signals concerning a wallet. Signals that do not carry the name of a wallet,
+     * e.g. <code>KWallet.walletClosedId</code> or <code>KWallet.allWalletsClosed</code>, always match.
+     *
+     * @param wallet The name of the wallet.
+     * @return The filter to pass on subscribing.
+     */
+    public static Predicate<DBusSignal> forWallet(String wallet) {
+        return signal -> {
+            var name = walletOf(signal);
+            return null == name || name.equals(wallet);
+        };
+    }
+
+    /**
+     * Criteria for <code>KWallet.folderUpdated</code> signals of a folder. Other signals are matched
+     * by wallet only, see {@link #forWallet(String)}.
+     *
+     * @param wallet The name of the wallet that contains the folder.
+     * @param folder The name of the folder.
+     * @return The filter to pass on subscribing.
+     */
+    public static Predicate<DBusSignal> forFolder(String wallet, String folder) {
+        return signal -> signal instanceof KWallet.folderUpdated fu
+                ? fu.a.equals(wallet) && fu.b.equals(folder)
+                : forWallet(wallet).test(signal);
+    }
+
+    static String walletOf(DBusSignal s) {
+        if (s instanceof KWallet.walletOpened wo) return wo.wallet;
+        if (s instanceof KWallet.walletDeleted wd) return wd.wallet;
+        if (s instanceof KWallet.walletClosed wc) return wc.wallet;
+        if (s instanceof KWallet.walletCreated wc) return wc.wallet;
+        if (s instanceof KWallet.folderListUpdated flu) return flu.wallet;
+        if (s instanceof KWallet.folderUpdated fu) return fu.a;
+        if (s instanceof KWallet.applicationDisconnected ad) return ad.wallet;
+        return null;
+    }
+
+    /**
+     * Change the number of handled signals kept in the history. Signals handled so far are discarded,
+     * the count of handled signals continues.
+     *
+     * @param size Number of signals to keep, at least 1.
+     */
+    public void setHistorySize(int size) {
+        handled = new SignalHistory(size, handled.sequence());
+    }
+
+    public int getHistorySize() {
+        return handled.capacity();
+    }
+
     public void connect(DBusConnection connection, List<Class<? extends DBusSignal>> signals) {
         if (null == this.connection) {
             this.connection = connection;
@@ -64,10 +206,22 @@ public class SignalHandler implements DBusSigHandler {
     @Override
     public void handle(DBusSignal s) {
 
-        Collections.rotate(Arrays.asList(handled), 1);
-        handled[0] = s;
-        count += 1;
+        var event = new SignalEvent();
+        event.begin();
+        Metrics.recordSignal(s.getClass());
+        handled.add(s);
+        if (!waiters.isEmpty()) waiters.removeIf(waiter -> waiter.offer(s));
+        var subscribers = subscriptions.get(s.getClass());
+        if (null != subscribers) {
+            for (var subscriber : subscribers) {
+                subscriber.dispatch(s);
+            }
+        }
+        firePropertyChange(s);
+        SignalEvent.commit(event, s, walletOf(s));
+    }
 
+    private void firePropertyChange(DBusSignal s) {
         if (s instanceof KWallet.walletOpened wo) {
             support.firePropertyChange("KWallet.walletOpened", null, wo.wallet);
             LOG.info("Received signal KWallet.walletOpened: {}", wo.wallet);
@@ -106,45 +260,104 @@ public class SignalHandler implements DBusSigHandler {
         }
     }
 
+    /**
+     * Get a snapshot of the signal history, newest first. Slots not used yet are null.
+     *
+     * @return The handled signals.
+     */
     public DBusSignal[] getHandledSignals() {
-        return handled;
+        return handled.toArray();
     }
 
     public <S extends DBusSignal> List<S> getHandledSignals(Class<S> s) {
-        return Arrays.stream(handled)
-                .filter(Objects::nonNull)
-                .filter(signal -> signal.getClass().equals(s))
-                .map(signal -> (S) signal)
-                .collect(Collectors.toList());
+        var signals = new ArrayList<S>();
+        handled.visit(signal -> {
+            if (signal.getClass().equals(s)) signals.add(s.cast(signal));
+            return true;
+        });
+        return signals;
     }
 
     public <S extends DBusSignal> List<S> getHandledSignals(Class<S> s, String path) {
-        return Arrays.stream(handled)
-                .filter(Objects::nonNull)
-                .filter(signal -> signal.getClass().equals(s))
-                .filter(signal -> signal.getPath().equals(path))
-                .map(signal -> (S) signal)
-                .collect(Collectors.toList());
+        var signals = new ArrayList<S>();
+        handled.visit(signal -> {
+            if (signal.getClass().equals(s) && signal.getPath().equals(path)) signals.add(s.cast(signal));
+            return true;
+        });
+        return signals;
     }
 
+    /**
+     * Number of signals handled so far. Wraps around after {@link Integer#MAX_VALUE} signals,
+     * see {@link #getSequence()}.
+     *
+     * @return The number of handled signals.
+     */
     public int getCount() {
-        return count;
+        return (int) handled.sequence();
+    }
+
+    /**
+     * Number of signals handled so far, read atomically.
+     *
+     * @return The number of handled signals.
+     */
+    public long getSequence() {
+        return handled.sequence();
     }
 
     public DBusSignal getLastHandledSignal() {
-        return handled.length > 0 ? handled[0] : null;
+        return handled.findLast(signal -> true);
     }
 
     public <S extends DBusSignal> S getLastHandledSignal(Class<S> s) {
-        return getHandledSignals(s).isEmpty() ? null : getHandledSignals(s).get(0);
+        return s.cast(handled.findLast(signal -> signal.getClass().equals(s)));
     }
 
     public <S extends DBusSignal> S getLastHandledSignal(Class<S> s, String path) {
-        return getHandledSignals(s, path).isEmpty() ? null : getHandledSignals(s, path).get(0);
+        return s.cast(handled.findLast(signal -> signal.getClass().equals(s) && signal.getPath().equals(path)));
     }
 
     /**
-     * @deprecated Please use {@link #addPropertyChangeListener(PropertyChangeListener)} instead
+     * Wait for the next signal of the given type, that is handled after this method was called.
+     * The returned future is completed directly from {@link #handle(DBusSignal)}, no thread is blocked
+     * or polling while waiting. Cancelling the future stops waiting.
+     * <p>
+     * Register the wait before triggering the action that emits the signal, otherwise the signal might be missed.
+     *
+     * @param s      The type of signal to wait for.
+     * @param path   The object path the signal has to be emitted from or null for any path.
+     * @param filter Criteria the signal has to meet, e.g. a transaction id.
+     * @param <S>    The type of signal to wait for.
+     * @return A future that gets completed with the signal.
+     */
+    public <S extends DBusSignal> CompletableFuture<S> next(Class<S> s, String path, Predicate<? super S> filter) {
+        var future = new CompletableFuture<S>();
+        var waiter = new Waiter<>(s, path, null == filter ? signal -> true : filter, future);
+        waiters.add(waiter);
+        future.whenComplete((signal, e) -> waiters.remove(waiter));
+        return future;
+    }
+
+    /**
+     * Wait for the next signal of the given type with a timeout.
+     * @see SignalHandler#next(Class, String, Predicate)
+     *
+     * @param s       The type of signal to wait for.
+     * @param path    The object path the signal has to be emitted from or null for any path.
+     * @param filter  Criteria the signal has to meet, e.g. a transaction id.
+     * @param timeout Time to wait for the signal, the future completes exceptionally with a
+     *                {@link TimeoutException} afterwards.
+     * @param <S>     The type of signal to wait for.
+     * @return A future that gets completed with the signal.
+     */
+    public <S extends DBusSignal> CompletableFuture<S> next(Class<S> s, String path, Predicate<? super S> filter, Duration timeout) {
+        return next(s, path, filter).orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @deprecated Please use {@link #next(Class, String, Predicate, Duration)} or
+     * {@link #addPropertyChangeListener(PropertyChangeListener)} instead
      */
     @Deprecated
     public <S extends DBusSignal> S await(Class<S> s, String path, Callable action) {
@@ -153,7 +366,8 @@ public class SignalHandler implements DBusSigHandler {
     }
 
     /**
-     * @deprecated Please use {@link #addPropertyChangeListener(PropertyChangeListener)} instead
+     * @deprecated Please use {@link #next(Class, String, Predicate, Duration)} or
+     * {@link #addPropertyChangeListener(PropertyChangeListener)} instead
      */
     @Deprecated
     public <S extends DBusSignal> S await(Class<S> s, String path, Callable action, Duration timeout) {
@@ -196,4 +410,40 @@ public class SignalHandler implements DBusSigHandler {
 
         return null;
     }
+
+    /**
+     * Subscription of a listener to a type of signal.
+     * @see SignalHandler#subscribe(Class, Predicate, Consumer)
+     */
+    public final class Subscription implements AutoCloseable {
+
+        private final Class<? extends DBusSignal> type;
+        private final Consumer<DBusSignal> dispatcher;
+
+        private Subscription(Class<? extends DBusSignal> type, Consumer<DBusSignal> dispatcher) {
+            this.type = type;
+            this.dispatcher = dispatcher;
+        }
+
+        private void dispatch(DBusSignal s) {
+            try {
+                dispatcher.accept(s);
+            } catch (RuntimeException e) {
+                LOG.error("Listener for signal {} failed", type.getName(), e);
+            }
+        }
+
+        public Class<? extends DBusSignal> getType() {
+            return type;
+        }
+
+        /**
+         * Stop listening. Closing a subscription twice has no effect.
+         */
+        @Override
+        public void close() {
+            var subscribers = subscriptions.get(type);
+            if (null != subscribers) subscribers.remove(this);
+        }
+    }
 }
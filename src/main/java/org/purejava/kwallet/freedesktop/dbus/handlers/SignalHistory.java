@@ -0,0 +1,126 @@
+package org.purejava.kwallet.freedesktop.dbus.handlers;
+
+import org.freedesktop.dbus.messages.DBusSignal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * Fixed-capacity ring buffer of the most recently handled signals.
+ * <p>
+ * Adding a signal is lock-free and O(1): a sequence number is claimed atomically and the signal is stored
+ * together with it in the slot the sequence number maps to, overwriting the oldest one. Readers walk the slots
+ * from the newest to the oldest signal without copying and skip slots whose sequence number does not match,
+ * i.e. slots that have been claimed but not stored yet or that have been overwritten meanwhile. Iteration is
+ * weakly consistent, signals added concurrently may or may not be seen.
+ */
+final class SignalHistory {
+
+    private final AtomicReferenceArray<Slot> signals;
+    private final AtomicLong sequence;
+
+    private record Slot(long seq, DBusSignal signal) {
+    }
+
+    SignalHistory(int capacity) {
+        this(capacity, 0L);
+    }
+
+    /**
+     * @param capacity Number of signals to keep.
+     * @param sequence Sequence number of the first signal added, e.g. to continue the numbering of a history
+     *                 this one replaces.
+     */
+    SignalHistory(int capacity, long sequence) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+        this.signals = new AtomicReferenceArray<>(capacity);
+        this.sequence = new AtomicLong(sequence);
+    }
+
+    /**
+     * Store a signal, replacing the oldest one if the history is full.
+     *
+     * @param signal The signal to store.
+     * @return The sequence number of the signal.
+     */
+    long add(DBusSignal signal) {
+        var seq = sequence.getAndIncrement();
+        signals.set(index(seq), new Slot(seq, signal));
+        return seq;
+    }
+
+    /**
+     * Total number of signals added so far, including the ones already overwritten.
+     *
+     * @return The next sequence number.
+     */
+    long sequence() {
+        return sequence.get();
+    }
+
+    int capacity() {
+        return signals.length();
+    }
+
+    /**
+     * Visit the stored signals from the newest to the oldest one.
+     *
+     * @param visitor Called for every signal, iteration stops as soon as it returns false.
+     */
+    void visit(Predicate<DBusSignal> visitor) {
+        var end = sequence.get();
+        var start = Math.max(0L, end - signals.length());
+        for (var seq = end - 1; seq >= start; seq--) {
+            var signal = get(seq);
+            if (null != signal && !visitor.test(signal)) return;
+        }
+    }
+
+    /**
+     * Find the newest stored signal that matches the filter.
+     *
+     * @param filter The criteria the signal has to meet.
+     * @return The signal or null, if no stored signal matches.
+     */
+    DBusSignal findLast(Predicate<DBusSignal> filter) {
+        var end = sequence.get();
+        var start = Math.max(0L, end - signals.length());
+        for (var seq = end - 1; seq >= start; seq--) {
+            var signal = get(seq);
+            if (null != signal && filter.test(signal)) return signal;
+        }
+        return null;
+    }
+
+    /**
+     * Copy the stored signals into an array, newest first. Slots not used yet are null.
+     *
+     * @return A snapshot of the history.
+     */
+    DBusSignal[] toArray() {
+        var result = new DBusSignal[signals.length()];
+        var end = sequence.get();
+        var start = Math.max(0L, end - signals.length());
+        var i = 0;
+        for (var seq = end - 1; seq >= start; seq--) {
+            var signal = get(seq);
+            if (null != signal) result[i++] = signal;
+        }
+        return result;
+    }
+
+    /**
+     * The signal with the given sequence number.
+     *
+     * @return The signal or null, if it has not been stored yet or has been overwritten already.
+     */
+    private DBusSignal get(long seq) {
+        var slot = signals.get(index(seq));
+        return null != slot && slot.seq() == seq ? slot.signal() : null;
+    }
+
+    private int index(long seq) {
+        return (int) (seq % signals.length());
+    }
+}
@@ -0,0 +1,238 @@
+package org.purejava.kwallet.freedesktop.dbus.handlers;
+
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.purejava.kwallet.KWallet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes the handled signals of a type to {@link Flow.Subscriber}s. Every subscriber gets its own bounded
+ * buffer and is called from the executor of the publisher, never from the signal thread of the connection,
+ * so a slow subscriber neither blocks the connection nor other subscribers. Signals are delivered only
+ * as requested. When a buffer is full, the {@link Overflow} strategy of the publisher decides which signal
+ * is discarded.
+ *
+ * @param <S> The type of signal to publish.
+ * @see SignalHandler#publisher(Class, int, Overflow, Executor)
+ */
+public final class SignalPublisher<S extends DBusSignal> implements Flow.Publisher<S> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SignalPublisher.class);
+
+    private final SignalHandler handler;
+    private final Class<S> type;
+    private final int bufferSize;
+    private final Overflow overflow;
+    private final Executor executor;
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * How to make room in a full buffer.
+     */
+    public enum Overflow {
+        /**
+         * Discard the oldest buffered signal.
+         */
+        DROP_OLDEST,
+        /**
+         * Replace a buffered signal with a newer one that concerns the same folder, in case of
+         * <code>KWallet.folderUpdated</code>, or the same wallet, for other signals that name a wallet.
+         * The replaced signal keeps its place in the buffer. Signals that can not be conflated, and any signal
+         * arriving while the buffer is full of signals of other folders, discard the oldest buffered signal.
+         */
+        CONFLATE
+    }
+
+    SignalPublisher(SignalHandler handler, Class<S> type, int bufferSize, Overflow overflow, Executor executor) {
+        if (bufferSize < 1) throw new IllegalArgumentException("Buffer size must be at least 1");
+        this.handler = handler;
+        this.type = Objects.requireNonNull(type);
+        this.bufferSize = bufferSize;
+        this.overflow = Objects.requireNonNull(overflow);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super S> subscriber) {
+        Objects.requireNonNull(subscriber);
+        var subscription = new SignalSubscription(subscriber);
+        subscription.start();
+    }
+
+    public Class<S> getType() {
+        return type;
+    }
+
+    /**
+     * Number of signals discarded so far, because the buffer of a subscriber was full.
+     *
+     * @return The amount of discarded signals of all subscribers.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    private Object keyOf(S signal) {
+        if (overflow == Overflow.CONFLATE) {
+            if (signal instanceof KWallet.folderUpdated fu) {
+                return new FolderKey(signal.getPath(), fu.a, fu.b);
+            }
+            var wallet = SignalHandler.walletOf(signal);
+            if (null != wallet) return new FolderKey(signal.getPath(), wallet, null);
+        }
+        return new Object();
+    }
+
+    private record FolderKey(String path, String wallet, String folder) {
+    }
+
+    private final class SignalSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super S> subscriber;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<Object, S> buffer = new LinkedHashMap<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private long demand = 0;
+        private Throwable error = null;
+        private boolean subscribed = false;
+        private SignalHandler.Subscription source;
+
+        SignalSubscription(Flow.Subscriber<? super S> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            source = handler.subscribe(type, this::offer);
+            schedule();
+        }
+
+        /**
+         * Called on the signal thread of the connection, only buffers the signal.
+         */
+        private void offer(S signal) {
+            if (cancelled.get()) return;
+            var key = keyOf(signal);
+            lock.lock();
+            try {
+                if (!buffer.containsKey(key) && buffer.size() >= bufferSize) {
+                    var oldest = buffer.keySet().iterator();
+                    oldest.next();
+                    oldest.remove();
+                    dropped.increment();
+                }
+                buffer.put(key, signal);
+            } finally {
+                lock.unlock();
+            }
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if (n <= 0) {
+                    error = new IllegalArgumentException("Requested " + n + " signals, must be positive");
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            } finally {
+                lock.unlock();
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                if (null != source) source.close();
+                lock.lock();
+                try {
+                    buffer.clear();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() != 0) return;
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                LOG.error("Could not deliver signals {}", type.getName(), e);
+                wip.set(0);
+                cancel();
+            }
+        }
+
+        /**
+         * Delivers the buffered signals on the executor, one run at a time.
+         */
+        @Override
+        public void run() {
+            var missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (!subscribed) {
+                subscribed = true;
+                try {
+                    subscriber.onSubscribe(this);
+                } catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+            }
+            while (!cancelled.get()) {
+                S signal;
+                Throwable failure;
+                lock.lock();
+                try {
+                    failure = error;
+                    if (null != failure || demand == 0 || buffer.isEmpty()) {
+                        signal = null;
+                    } else {
+                        var oldest = buffer.values().iterator();
+                        signal = oldest.next();
+                        oldest.remove();
+                        if (demand != Long.MAX_VALUE) demand--;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (null != failure) {
+                    cancel();
+                    subscriber.onError(failure);
+                    return;
+                }
+                if (null == signal) return;
+                try {
+                    subscriber.onNext(signal);
+                } catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+            }
+        }
+
+        private void fail(RuntimeException e) {
+            LOG.error("Subscriber of signal {} failed", type.getName(), e);
+            cancel();
+        }
+    }
+}
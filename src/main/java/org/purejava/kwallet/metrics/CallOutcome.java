@@ -0,0 +1,19 @@
+package org.purejava.kwallet.metrics;
+
+/**
+ * Result of a method call on the kwallet daemon.
+ */
+public enum CallOutcome {
+    /**
+     * A reply has been received.
+     */
+    SUCCESS,
+    /**
+     * The daemon or the bus answered with an error, or the call could not be sent.
+     */
+    ERROR,
+    /**
+     * No reply has been received within the reply timeout.
+     */
+    TIMEOUT
+}
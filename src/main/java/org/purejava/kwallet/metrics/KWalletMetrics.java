@@ -0,0 +1,194 @@
+package org.purejava.kwallet.metrics;
+
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Built-in recorder that keeps call counts, error and timeout counts and a latency histogram per D-Bus method
+ * as well as the number of handled signals per type. It can be read directly or, after {@link #register()},
+ * with any JMX client as <code>org.purejava.kwallet:type=KWalletMetrics</code>.
+ * <pre>{@code
+ * try (var metrics = KWalletMetrics.register()) {
+ *     ...
+ *     var readPassword = metrics.snapshot("readPassword");
+ * }
+ * }</pre>
+ */
+public class KWalletMetrics implements MetricsRecorder, KWalletMetricsMXBean, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KWalletMetrics.class);
+    public static final String OBJECT_NAME = "org.purejava.kwallet:type=KWalletMetrics";
+
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> signals = new ConcurrentHashMap<>();
+    private volatile long since = System.nanoTime();
+    private ObjectName name = null;
+
+    /**
+     * Measurements of a single D-Bus method, see {@link #snapshot(String)}.
+     *
+     * @param calls         Number of calls, including failed ones.
+     * @param errors        Number of calls answered with an error.
+     * @param timeouts      Number of calls without a reply.
+     * @param meanNanos     Mean latency.
+     * @param medianNanos   Estimated median latency.
+     * @param p99Nanos      Estimated 99th percentile of the latency.
+     * @param maxNanos      Maximum latency.
+     */
+    public record Snapshot(long calls, long errors, long timeouts,
+                           double meanNanos, long medianNanos, long p99Nanos, long maxNanos) {
+    }
+
+    private static final class MethodMetrics {
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    /**
+     * Create a recorder, register it as MBean and start recording.
+     *
+     * @return The recorder, close it to stop recording.
+     */
+    public static KWalletMetrics register() {
+        var metrics = new KWalletMetrics();
+        try {
+            metrics.name = new ObjectName(OBJECT_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metrics.name);
+        } catch (JMException e) {
+            LOG.error(e.toString(), e.getCause());
+            metrics.name = null;
+        }
+        Metrics.add(metrics);
+        return metrics;
+    }
+
+    @Override
+    public void recordCall(String method, CallOutcome outcome, long nanos) {
+        var m = methods.computeIfAbsent(method, k -> new MethodMetrics());
+        m.latency.record(nanos);
+        switch (outcome) {
+            case ERROR -> m.errors.increment();
+            case TIMEOUT -> m.timeouts.increment();
+            default -> {
+            }
+        }
+    }
+
+    @Override
+    public void recordSignal(Class<? extends DBusSignal> signal) {
+        signals.computeIfAbsent(signal.getSimpleName(), k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Get the measurements of a method.
+     *
+     * @param method The name of the D-Bus method.
+     * @return The measurements, all zero if the method has not been called.
+     */
+    public Snapshot snapshot(String method) {
+        var m = methods.get(method);
+        if (null == m) return new Snapshot(0, 0, 0, 0.0, 0, 0, 0);
+        return new Snapshot(m.latency.getCount(), m.errors.sum(), m.timeouts.sum(), m.latency.getMeanNanos(),
+                m.latency.getPercentileNanos(50), m.latency.getPercentileNanos(99), m.latency.getMaxNanos());
+    }
+
+    @Override
+    public Map<String, Long> getCalls() {
+        var result = new TreeMap<String, Long>();
+        methods.forEach((method, m) -> result.put(method, m.latency.getCount()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        var result = new TreeMap<String, Long>();
+        methods.forEach((method, m) -> result.put(method, m.errors.sum()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getTimeouts() {
+        var result = new TreeMap<String, Long>();
+        methods.forEach((method, m) -> result.put(method, m.timeouts.sum()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMillis() {
+        return latencies(LatencyHistogram::getMeanNanos);
+    }
+
+    @Override
+    public Map<String, Double> getMedianLatencyMillis() {
+        return latencies(h -> h.getPercentileNanos(50));
+    }
+
+    @Override
+    public Map<String, Double> getP99LatencyMillis() {
+        return latencies(h -> h.getPercentileNanos(99));
+    }
+
+    @Override
+    public Map<String, Double> getMaxLatencyMillis() {
+        return latencies(LatencyHistogram::getMaxNanos);
+    }
+
+    private Map<String, Double> latencies(ToDoubleFunction<LatencyHistogram> nanos) {
+        var result = new TreeMap<String, Double>();
+        methods.forEach((method, m) -> result.put(method, nanos.applyAsDouble(m.latency) / 1_000_000.0));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getSignals() {
+        var result = new TreeMap<String, Long>();
+        signals.forEach((signal, count) -> result.put(signal, count.sum()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getSignalRates() {
+        var seconds = Math.max(getUptimeSeconds(), 1e-3);
+        var result = new TreeMap<String, Double>();
+        signals.forEach((signal, count) -> result.put(signal, count.sum() / seconds));
+        return result;
+    }
+
+    @Override
+    public double getUptimeSeconds() {
+        return (System.nanoTime() - since) / 1e9;
+    }
+
+    @Override
+    public void reset() {
+        methods.clear();
+        signals.clear();
+        since = System.nanoTime();
+    }
+
+    /**
+     * Stop recording and unregister the MBean.
+     */
+    @Override
+    public void close() {
+        Metrics.remove(this);
+        if (null == name) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            LOG.error(e.toString(), e.getCause());
+        }
+        name = null;
+    }
+}
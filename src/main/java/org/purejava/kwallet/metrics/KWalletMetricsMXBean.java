@@ -0,0 +1,42 @@
+package org.purejava.kwallet.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link KWalletMetrics}. All maps are keyed by the name of the D-Bus method or,
+ * for signals, by the simple name of the signal class. Latencies are given in milliseconds.
+ */
+public interface KWalletMetricsMXBean {
+
+    Map<String, Long> getCalls();
+
+    Map<String, Long> getErrors();
+
+    Map<String, Long> getTimeouts();
+
+    Map<String, Double> getMeanLatencyMillis();
+
+    Map<String, Double> getMedianLatencyMillis();
+
+    Map<String, Double> getP99LatencyMillis();
+
+    Map<String, Double> getMaxLatencyMillis();
+
+    Map<String, Long> getSignals();
+
+    /**
+     * Signals per second since the start or the last reset.
+     *
+     * @return The rate per type of signal.
+     */
+    Map<String, Double> getSignalRates();
+
+    /**
+     * Seconds since the start or the last reset.
+     *
+     * @return The length of the measuring period.
+     */
+    double getUptimeSeconds();
+
+    void reset();
+}
@@ -0,0 +1,74 @@
+package org.purejava.kwallet.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with exponential buckets. Bucket <code>i</code> counts latencies below
+ * <code>2^i</code> microseconds, so percentiles are accurate within a factor of two, which is enough
+ * to tell a 50 us call from a 5 ms call.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        var micros = Math.max(0L, nanos / 1000L);
+        var bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        total.add(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public double getMeanNanos() {
+        var n = count.sum();
+        return n == 0 ? 0.0 : (double) total.sum() / n;
+    }
+
+    /**
+     * Estimate a percentile of the recorded latencies.
+     *
+     * @param percentile The percentile between 0 and 100, e.g. 99.
+     * @return The upper bound of the bucket the percentile falls into, 0 if nothing has been recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        var n = 0L;
+        var counts = new long[BUCKETS];
+        for (var i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        if (n == 0) return 0;
+        var rank = (long) Math.ceil(percentile / 100.0 * n);
+        var seen = 0L;
+        for (var i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min((1L << i) * 1000L, max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (var i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+}
@@ -0,0 +1,63 @@
+package org.purejava.kwallet.metrics;
+
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of the {@link MetricsRecorder}s, that measurements are passed on to. Without registered recorders
+ * nothing is measured.
+ */
+public final class Metrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Metrics.class);
+    private static final List<MetricsRecorder> RECORDERS = new CopyOnWriteArrayList<>();
+
+    static {
+        for (var recorder : ServiceLoader.load(MetricsRecorder.class)) {
+            LOG.debug("Found metrics recorder {}", recorder.getClass().getName());
+            RECORDERS.add(recorder);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static void add(MetricsRecorder recorder) {
+        RECORDERS.add(recorder);
+    }
+
+    public static void remove(MetricsRecorder recorder) {
+        RECORDERS.remove(recorder);
+    }
+
+    public static boolean isEnabled() {
+        return !RECORDERS.isEmpty();
+    }
+
+    public static void recordCall(String method, CallOutcome outcome, long nanos) {
+        if (RECORDERS.isEmpty()) return;
+        for (var recorder : RECORDERS) {
+            try {
+                recorder.recordCall(method, outcome, nanos);
+            } catch (RuntimeException e) {
+                LOG.warn("Metrics recorder failed", e);
+            }
+        }
+    }
+
+    public static void recordSignal(Class<? extends DBusSignal> signal) {
+        if (RECORDERS.isEmpty()) return;
+        for (var recorder : RECORDERS) {
+            try {
+                recorder.recordSignal(signal);
+            } catch (RuntimeException e) {
+                LOG.warn("Metrics recorder failed", e);
+            }
+        }
+    }
+}
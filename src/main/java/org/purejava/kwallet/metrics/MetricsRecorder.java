@@ -0,0 +1,30 @@
+package org.purejava.kwallet.metrics;
+
+import org.freedesktop.dbus.messages.DBusSignal;
+
+/**
+ * Receives measurements of D-Bus traffic, e.g. to forward them to a metrics backend.
+ * <p>
+ * Recorders are called on the thread that made the call or handles the signal and should return quickly.
+ * They are registered with {@link Metrics#add(MetricsRecorder)} or found with the {@link java.util.ServiceLoader}
+ * when the library is loaded.
+ */
+public interface MetricsRecorder {
+
+    /**
+     * Record a completed method call.
+     *
+     * @param method  The name of the D-Bus method, e.g. <code>readPassword</code>.
+     * @param outcome How the call ended.
+     * @param nanos   Time from sending the call until the reply has been received or the call has been given up.
+     */
+    void recordCall(String method, CallOutcome outcome, long nanos);
+
+    /**
+     * Record a handled signal.
+     *
+     * @param signal The type of the signal.
+     */
+    default void recordSignal(Class<? extends DBusSignal> signal) {
+    }
+}
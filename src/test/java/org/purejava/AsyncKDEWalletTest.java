@@ -0,0 +1,61 @@
+package org.purejava;
+
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.fake.FakeKWalletdTestBase;
+import org.purejava.kwallet.metrics.KWalletMetrics;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncKDEWalletTest extends FakeKWalletdTestBase {
+
+    @Test
+    @DisplayName("Testing writing and reading a password asynchronously...")
+    public void roundTrip() throws Exception {
+        var async = wallet.async();
+        assertEquals(0, async.writePassword(handle, "Async", "key", "value", APPID).get(5, TimeUnit.SECONDS).intValue());
+        assertTrue(async.hasEntry(handle, "Async", "key", APPID).get(5, TimeUnit.SECONDS));
+        assertEquals("value", async.readPassword(handle, "Async", "key", APPID).get(5, TimeUnit.SECONDS));
+        assertEquals(1, async.entryType(handle, "Async", "key", APPID).get(5, TimeUnit.SECONDS).intValue());
+    }
+
+    @Test
+    @DisplayName("Testing calls sent without waiting for the previous reply...")
+    public void pipelined() throws Exception {
+        kwalletd.storePassword(Static.DEFAULT_WALLET, "Async", "key", "value");
+        kwalletd.faults().latency(Duration.ofMillis(20));
+        var async = wallet.async();
+        var replies = IntStream.range(0, 10)
+                .mapToObj(i -> async.readPassword(handle, "Async", "key", APPID))
+                .toList();
+        CompletableFuture.allOf(replies.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        replies.forEach(reply -> assertEquals("value", reply.join()));
+        assertEquals(10, kwalletd.calls("readPassword"));
+    }
+
+    @Test
+    @DisplayName("Testing the default result of a failed call...")
+    public void failure() throws Exception {
+        kwalletd.faults().failNext("writePassword", 1).failNext("hasFolder", 1);
+        var async = wallet.async();
+        assertEquals(-1, async.writePassword(handle, "Async", "key", "value", APPID).get(5, TimeUnit.SECONDS).intValue());
+        assertFalse(async.hasFolder(handle, "Async", APPID).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Testing calls kwalletd does not reply to...")
+    public void noReply() throws Exception {
+        try (var metrics = KWalletMetrics.register()) {
+            var sync = wallet.async().sync(handle, APPID);
+            assertTrue(sync.isDone());
+            assertTrue(kwalletd.awaitCalls("sync", 1, Duration.ofSeconds(5)));
+            assertEquals(0, metrics.snapshot("sync").calls());
+            assertEquals(0, metrics.snapshot("sync").timeouts());
+        }
+    }
+}
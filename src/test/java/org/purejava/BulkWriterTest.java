@@ -0,0 +1,61 @@
+package org.purejava;
+
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.BulkWriter;
+import org.purejava.kwallet.fake.FakeKWalletdTestBase;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkWriterTest extends FakeKWalletdTestBase {
+    private static final int KEYS = 20;
+
+    @Test
+    @DisplayName("Testing the window of calls awaiting their reply...")
+    public void window() throws InterruptedException {
+        kwalletd.faults().latency(Duration.ofMillis(20));
+        var completed = new AtomicInteger();
+        var maxInFlight = 0;
+        try (var writer = new BulkWriter(wallet, handle, APPID, 4, (folder, key, result) -> completed.incrementAndGet())) {
+            for (var i = 0; i < KEYS; i++) {
+                writer.writePassword("Bulk", "key" + i, "password" + i);
+                maxInFlight = Math.max(maxInFlight, i + 1 - completed.get());
+            }
+            writer.flush();
+            assertEquals(KEYS, writer.getWritten());
+            assertEquals(0, writer.getFailed());
+        }
+        assertTrue(maxInFlight <= 4);
+        assertEquals(KEYS, completed.get());
+        assertEquals("password7", wallet.readPassword(handle, "Bulk", "key7", APPID));
+    }
+
+    @Test
+    @DisplayName("Testing counting of failed writes...")
+    public void failures() throws InterruptedException {
+        kwalletd.faults().failNext("writePassword", 3);
+        var failed = new AtomicInteger();
+        try (var writer = new BulkWriter(wallet, handle, APPID, 2, (folder, key, result) -> {
+            if (result != 0) failed.incrementAndGet();
+        })) {
+            for (var i = 0; i < KEYS; i++) {
+                writer.writePassword("Bulk", "key" + i, "password" + i);
+            }
+            writer.flush();
+            assertEquals(KEYS - 3, writer.getWritten());
+            assertEquals(3, writer.getFailed());
+        }
+        assertEquals(3, failed.get());
+    }
+
+    @Test
+    @DisplayName("Testing the result of a single write...")
+    public void result() throws Exception {
+        try (var writer = new BulkWriter(wallet, handle, APPID)) {
+            assertEquals(0, writer.writeEntry("Bulk", "entry", new byte[]{1, 2, 3}).get().intValue());
+        }
+        assertArrayEquals(new byte[]{1, 2, 3}, wallet.readEntry(handle, "Bulk", "entry", APPID));
+    }
+}
@@ -0,0 +1,86 @@
+package org.purejava;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.CachingKDEWallet;
+import org.purejava.kwallet.KDEWallet;
+import org.purejava.kwallet.KWallet;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.fake.FakeKWalletdTestBase;
+import org.purejava.kwallet.freedesktop.dbus.handlers.SignalHandler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingKDEWalletTest extends FakeKWalletdTestBase {
+    private CachingKDEWallet cache;
+
+    @BeforeEach
+    public void beforeEach() throws DBusException {
+        kwalletd.storePassword(Static.DEFAULT_WALLET, "Cached", "password", "secret");
+        cache = new CachingKDEWallet(new KDEWallet(kwalletd.newConnection(), kwalletd.getService()));
+    }
+
+    @AfterEach
+    public void afterEach() {
+        cache.close();
+    }
+
+    @Test
+    @DisplayName("Testing repeated reads served from the cache...")
+    public void hits() {
+        for (var i = 0; i < 10; i++) {
+            assertEquals("secret", cache.readPassword(handle, "Cached", "password", APPID));
+        }
+        assertEquals(1, kwalletd.calls("readPassword"));
+        assertEquals("secret", cache.readPassword(handle, "Cached", "password", "Other"));
+        assertEquals(2, kwalletd.calls("readPassword"));
+    }
+
+    @Test
+    @DisplayName("Testing invalidation on folderUpdated...")
+    public void folderUpdated() throws DBusException {
+        assertEquals("secret", cache.readPassword(handle, "Cached", "password", APPID));
+        kwalletd.storePassword(Static.DEFAULT_WALLET, "Cached", "password", "changed");
+        assertEquals("secret", cache.readPassword(handle, "Cached", "password", APPID));
+        SignalHandler.getInstance().handle(new KWallet.folderUpdated(kwalletd.getService().objectPath(),
+                Static.DEFAULT_WALLET, "Cached"));
+        assertEquals("changed", cache.readPassword(handle, "Cached", "password", APPID));
+        assertEquals(2, kwalletd.calls("readPassword"));
+    }
+
+    @Test
+    @DisplayName("Testing invalidation on writes through the cache...")
+    public void write() {
+        assertEquals("secret", cache.readPassword(handle, "Cached", "password", APPID));
+        assertEquals(0, cache.writePassword(handle, "Cached", "password", "written", APPID));
+        assertEquals("written", cache.readPassword(handle, "Cached", "password", APPID));
+    }
+
+    @Test
+    @DisplayName("Testing caching of negative answers...")
+    public void negative() throws DBusException {
+        for (var i = 0; i < 10; i++) {
+            assertFalse(cache.hasEntry(handle, "Cached", "missing", APPID));
+            assertEquals("", cache.readPassword(handle, "Cached", "missing", APPID));
+        }
+        assertEquals(1, kwalletd.calls("hasEntry"));
+        assertEquals(1, kwalletd.calls("readPassword"));
+
+        kwalletd.storePassword(Static.DEFAULT_WALLET, "Cached", "missing", "found");
+        SignalHandler.getInstance().handle(new KWallet.folderUpdated(kwalletd.getService().objectPath(),
+                Static.DEFAULT_WALLET, "Cached"));
+        assertTrue(cache.hasEntry(handle, "Cached", "missing", APPID));
+        assertEquals("found", cache.readPassword(handle, "Cached", "missing", APPID));
+    }
+
+    @Test
+    @DisplayName("Testing failed calls not being cached...")
+    public void failure() {
+        kwalletd.faults().fail("hasEntry");
+        assertFalse(cache.hasEntry(handle, "Cached", "password", APPID));
+        kwalletd.faults().reset();
+        assertTrue(cache.hasEntry(handle, "Cached", "password", APPID));
+        assertTrue(cache.hasEntry(handle, "Cached", "password", APPID));
+        assertEquals(1, cache.size());
+    }
+}
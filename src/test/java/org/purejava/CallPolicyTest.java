@@ -0,0 +1,66 @@
+package org.purejava;
+
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.fake.FakeKWalletdTestBase;
+import org.purejava.kwallet.freedesktop.dbus.handlers.CallPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CallPolicyTest extends FakeKWalletdTestBase {
+    private static final Logger LOG = LoggerFactory.getLogger(CallPolicyTest.class);
+
+    @BeforeEach
+    public void beforeEach() {
+        kwalletd.storePassword(Static.DEFAULT_WALLET, "Policy", "key", "value");
+    }
+
+    @Test
+    @DisplayName("Testing retries of idempotent reads...")
+    public void retry() {
+        kwalletd.faults().failNext("readPassword", 2);
+        var result = wallet.call("readPassword", "isss", handle, "Policy", "key", APPID);
+        assertTrue(result.isSuccess());
+        assertEquals(3, result.attempts());
+        assertEquals("value", result.parameters()[0]);
+    }
+
+    @Test
+    @DisplayName("Testing that writes are not repeated...")
+    public void noRetry() {
+        kwalletd.faults().failNext("writePassword", 1);
+        var result = wallet.call("writePassword", "issss", handle, "Policy", "key", "other", APPID);
+        assertTrue(result.isError());
+        assertEquals(1, result.attempts());
+        assertNotNull(result.error());
+        assertEquals("value", wallet.readPassword(handle, "Policy", "key", APPID));
+    }
+
+    @Test
+    @DisplayName("Testing timeouts as distinct outcome...")
+    public void timeout() {
+        kwalletd.faults().latency(Duration.ofMillis(300));
+        var result = wallet.call(CallPolicy.timeout(Duration.ofMillis(100)), "readPassword", "isss", handle, "Policy", "key", APPID);
+        assertTrue(result.isTimeout());
+        assertNull(result.parameters());
+        LOG.info("Call timed out after {} attempt(s)", result.attempts());
+    }
+
+    @Test
+    @DisplayName("Testing the deadline across attempts...")
+    public void deadline() {
+        kwalletd.faults().latency(Duration.ofMillis(300));
+        var policy = CallPolicy.timeout(Duration.ofMillis(100))
+                .withDeadline(Duration.ofMillis(250))
+                .withRetries(10, Duration.ofMillis(10), Duration.ofMillis(20));
+        var start = System.nanoTime();
+        var result = wallet.call(policy, "readPassword", "isss", handle, "Policy", "key", APPID);
+        assertTrue(result.isTimeout());
+        assertTrue(result.attempts() < 10);
+        assertTrue(System.nanoTime() - start < Duration.ofMillis(1000).toNanos());
+    }
+}
@@ -0,0 +1,42 @@
+package org.purejava;
+
+import org.freedesktop.dbus.types.Variant;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.purejava.kwallet.Static;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConvertTest {
+
+    @Test
+    @DisplayName("Testing conversion of a byte[]...")
+    void testByteArray() {
+        var bytes = new byte[]{1, 2, 3};
+        assertSame(bytes, Static.Convert.toByteArray((Object) bytes));
+    }
+
+    @Test
+    @DisplayName("Testing conversion of a list of bytes...")
+    void testList() {
+        assertArrayEquals(new byte[]{1, -1, 0}, Static.Convert.toByteArray(List.of((byte) 1, (byte) -1, (byte) 0)));
+        assertArrayEquals(new byte[0], Static.Convert.toByteArray(List.<Byte>of()));
+    }
+
+    @Test
+    @DisplayName("Testing conversion of variants...")
+    void testVariant() {
+        assertArrayEquals(new byte[]{4, 5}, Static.Convert.toByteArray(new Variant<>(new byte[]{4, 5})));
+        assertArrayEquals(new byte[]{6, 7},
+                Static.Convert.toByteArray(new Variant<>(List.of((byte) 6, (byte) 7), "ay")));
+    }
+
+    @Test
+    @DisplayName("Testing conversion of values that are no array of byte...")
+    void testOther() {
+        assertArrayEquals(new byte[0], Static.Convert.toByteArray((Object) null));
+        assertArrayEquals(new byte[0], Static.Convert.toByteArray("not bytes"));
+    }
+}
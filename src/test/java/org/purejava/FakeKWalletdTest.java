@@ -0,0 +1,96 @@
+package org.purejava;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.KDEWallet;
+import org.purejava.kwallet.KWallet;
+import org.purejava.kwallet.MapEntries;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.fake.FakeKWalletd;
+import org.purejava.kwallet.freedesktop.dbus.handlers.SignalHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FakeKWalletdTest {
+    private static final Logger LOG = LoggerFactory.getLogger(FakeKWalletdTest.class);
+    private static final String APPID = "Tester";
+    private static FakeKWalletd kwalletd;
+    private KDEWallet wallet;
+    private int handle;
+
+    @BeforeAll
+    public static void beforeAll() throws DBusException {
+        kwalletd = new FakeKWalletd();
+    }
+
+    @AfterAll
+    public static void afterAll() {
+        kwalletd.close();
+    }
+
+    @BeforeEach
+    public void beforeEach() {
+        wallet = kwalletd.kdeWallet();
+        handle = wallet.open(Static.DEFAULT_WALLET, 0L, APPID);
+    }
+
+    @AfterEach
+    public void afterEach() {
+        kwalletd.faults().reset();
+        wallet.close(handle, true, APPID);
+    }
+
+    @Test
+    @DisplayName("Testing writing and reading entries of all types...")
+    public void readWrite() {
+        assertTrue(handle > 0);
+        assertTrue(wallet.isOpen(handle));
+        assertEquals(0, wallet.writePassword(handle, "Fake", "password", "secret", APPID));
+        assertEquals(0, wallet.writeEntry(handle, "Fake", "entry", new byte[]{1, 2, 3}, APPID));
+        var map = new MapEntries();
+        map.storeEntry("user", "tester");
+        assertEquals(0, wallet.writeMap(handle, "Fake", "map", map.getByteField(), APPID));
+
+        assertEquals("secret", wallet.readPassword(handle, "Fake", "password", APPID));
+        assertArrayEquals(new byte[]{1, 2, 3}, wallet.readEntry(handle, "Fake", "entry", APPID));
+        var read = new MapEntries();
+        assertTrue(read.setByteField(wallet.readMap(handle, "Fake", "map", APPID)));
+        assertTrue(read.hasValue("user", "tester"));
+        assertEquals(List.of("entry", "map", "password"), wallet.entryList(handle, "Fake", APPID));
+        assertEquals("secret", wallet.passwordList(handle, "Fake", APPID).get("password"));
+        assertEquals(3, wallet.entriesList(handle, "Fake", APPID).size());
+        assertTrue(wallet.removeFolder(handle, "Fake", APPID));
+        LOG.info("Successfully wrote and read entries of all types.");
+    }
+
+    @Test
+    @DisplayName("Testing signals emitted on changes...")
+    public void signals() throws Exception {
+        var updated = SignalHandler.getInstance().next(KWallet.folderUpdated.class,
+                kwalletd.getService().objectPath(), fu -> "Signals".equals(fu.b), Duration.ofSeconds(5));
+        assertEquals(0, wallet.writePassword(handle, "Signals", "key", "value", APPID));
+        assertEquals(Static.DEFAULT_WALLET, updated.get().a);
+        var closed = SignalHandler.getInstance().next(KWallet.walletClosedId.class,
+                kwalletd.getService().objectPath(), wc -> wc.handle == handle, Duration.ofSeconds(5));
+        assertEquals(0, wallet.close(handle, true, APPID));
+        assertEquals(handle, closed.get().handle);
+    }
+
+    @Test
+    @DisplayName("Testing injected failures and latency...")
+    public void faults() {
+        kwalletd.storePassword(Static.DEFAULT_WALLET, "Faults", "key", "value");
+        kwalletd.faults().fail("writePassword").latency(Duration.ofMillis(20));
+        var calls = kwalletd.calls("writePassword");
+        var start = System.nanoTime();
+        assertEquals(-1, wallet.writePassword(handle, "Faults", "key", "other", APPID));
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(20).toNanos());
+        assertEquals(calls + 1, kwalletd.calls("writePassword"));
+        assertEquals("value", wallet.readPassword(handle, "Faults", "key", APPID));
+    }
+}
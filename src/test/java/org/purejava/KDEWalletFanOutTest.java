@@ -0,0 +1,75 @@
+package org.purejava;
+
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.fake.FakeKWalletdTestBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KDEWalletFanOutTest extends FakeKWalletdTestBase {
+    private static final Logger LOG = LoggerFactory.getLogger(KDEWalletFanOutTest.class);
+    private static final int KEYS = 50;
+
+    @BeforeEach
+    public void beforeEach() {
+        for (var i = 0; i < KEYS; i++) {
+            kwalletd.storePassword(Static.DEFAULT_WALLET, "Credentials", "key" + i, "password" + i);
+            kwalletd.storeEntry(Static.DEFAULT_WALLET, "Folder" + i, "entry", new byte[]{(byte) i});
+        }
+        kwalletd.faults().latency(Duration.ofMillis(50));
+    }
+
+    @Test
+    @DisplayName("Testing concurrent lookup of passwords...")
+    public void readPasswords() {
+        var keys = IntStream.range(0, KEYS + 1).mapToObj(i -> "key" + i).toList();
+        var start = System.nanoTime();
+        var result = wallet.readPasswords(handle, "Credentials", keys, APPID);
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+        assertTrue(result.isComplete());
+        var passwords = result.values();
+        assertEquals(KEYS, passwords.size());
+        assertEquals("password42", passwords.get("key42"));
+        assertFalse(passwords.containsKey("key" + KEYS));
+        assertTrue(elapsed.compareTo(Duration.ofMillis(50L * KEYS / 2)) < 0);
+        LOG.info("Read {} passwords in {} ms", passwords.size(), elapsed.toMillis());
+    }
+
+    @Test
+    @DisplayName("Testing concurrent lookup of folders...")
+    public void readFolders() {
+        var result = wallet.readFolders(handle, List.of("Folder1", "Folder2", "Missing"), APPID);
+        assertTrue(result.isComplete());
+        var folders = result.values();
+        assertEquals(2, folders.size());
+        assertArrayEquals(new byte[]{2}, folders.get("Folder2").get("entry"));
+    }
+
+    @Test
+    @DisplayName("Testing an interrupted lookup...")
+    public void interrupted() {
+        Thread.currentThread().interrupt();
+        var result = wallet.readPasswords(handle, "Credentials", List.of("key1", "key2"), APPID);
+        assertTrue(Thread.interrupted());
+        assertEquals(2, result.values().size() + result.failed().size());
+    }
+
+    @Test
+    @DisplayName("Testing failed lookups told apart from missing keys...")
+    public void failures() {
+        kwalletd.faults().failNext("readPassword", 3);
+        var keys = IntStream.range(0, KEYS + 1).mapToObj(i -> "key" + i).toList();
+        var result = wallet.readPasswords(handle, "Credentials", keys, APPID);
+        assertFalse(result.isComplete());
+        assertEquals(3, result.failed().size());
+        assertEquals(KEYS - 3, result.values().size());
+        assertFalse(result.failed().contains("key" + KEYS));
+        result.failed().forEach(key -> assertFalse(result.values().containsKey(key)));
+    }
+}
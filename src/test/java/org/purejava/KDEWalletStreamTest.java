@@ -0,0 +1,75 @@
+package org.purejava;
+
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.KDEWallet;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.WalletEntry;
+import org.purejava.kwallet.fake.FakeKWalletdTestBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KDEWalletStreamTest extends FakeKWalletdTestBase {
+    private static final Logger LOG = LoggerFactory.getLogger(KDEWalletStreamTest.class);
+    private static final int FOLDERS = 20;
+    private static final int KEYS = 200;
+
+    @BeforeEach
+    public void beforeEach() {
+        for (var i = 0; i < FOLDERS; i++) {
+            kwalletd.storeEntry(Static.DEFAULT_WALLET, "Folder" + i, "entry", new byte[]{(byte) i});
+        }
+        for (var i = 0; i < KEYS; i++) {
+            kwalletd.storeEntry(Static.DEFAULT_WALLET, "Large", "key" + i, new byte[]{(byte) i, 1});
+        }
+    }
+
+    @Test
+    @DisplayName("Testing streaming of a wallet...")
+    public void streamWallet() {
+        var entries = wallet.stream(handle, APPID).collect(Collectors.groupingBy(WalletEntry::folder, Collectors.counting()));
+        assertEquals(FOLDERS + 1, entries.size());
+        assertEquals((long) KEYS, (long) entries.get("Large"));
+        assertEquals(1L, (long) entries.get("Folder7"));
+    }
+
+    @Test
+    @DisplayName("Testing lazy streaming of a wallet...")
+    public void streamLazily() {
+        var first = wallet.stream(handle, APPID).findFirst();
+        assertTrue(first.isPresent());
+        assertEquals(1, kwalletd.calls("entriesList"));
+        assertEquals(0, kwalletd.calls("readEntry"));
+    }
+
+    @Test
+    @DisplayName("Testing parallel streaming of a wallet...")
+    public void streamParallel() {
+        var count = wallet.stream(handle, APPID).parallel().filter(e -> e.value().length == 1).count();
+        assertEquals(FOLDERS, count);
+        assertEquals(FOLDERS + 1, kwalletd.calls("entriesList"));
+    }
+
+    @Test
+    @DisplayName("Testing streaming of a folder in chunks...")
+    public void streamFolder() {
+        var first = wallet.stream(handle, "Large", APPID).limit(10).toList();
+        assertEquals(10, first.size());
+        assertEquals(KDEWallet.FAN_OUT_WINDOW, kwalletd.calls("readEntry"));
+
+        var sum = wallet.stream(handle, "Large", APPID).parallel().mapToInt(e -> e.value()[0] & 0xFF).sum();
+        assertEquals(KEYS * (KEYS - 1) / 2, sum);
+        LOG.info("Streamed {} entries with {} calls", KEYS, kwalletd.calls("readEntry"));
+    }
+
+    @Test
+    @DisplayName("Testing a failed read while streaming a folder...")
+    public void streamFailure() {
+        kwalletd.faults().failNext("readEntry", 1);
+        assertThrows(DBusExecutionException.class, () -> wallet.stream(handle, "Large", APPID).toList());
+    }
+}
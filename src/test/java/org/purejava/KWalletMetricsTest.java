@@ -0,0 +1,102 @@
+package org.purejava;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.KWallet;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.fake.FakeKWalletd;
+import org.purejava.kwallet.freedesktop.dbus.handlers.SignalHandler;
+import org.purejava.kwallet.metrics.KWalletMetrics;
+import org.purejava.kwallet.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KWalletMetricsTest {
+    private static final Logger LOG = LoggerFactory.getLogger(KWalletMetricsTest.class);
+    private static final String APPID = "Tester";
+    private FakeKWalletd kwalletd;
+    private KWalletMetrics metrics;
+
+    @BeforeEach
+    public void beforeEach() throws DBusException {
+        kwalletd = new FakeKWalletd();
+        metrics = KWalletMetrics.register();
+    }
+
+    @AfterEach
+    public void afterEach() {
+        metrics.close();
+        kwalletd.close();
+    }
+
+    @Test
+    @DisplayName("Testing call, error and latency metrics...")
+    public void calls() {
+        var wallet = kwalletd.kdeWallet();
+        var handle = wallet.open(Static.DEFAULT_WALLET, 0L, APPID);
+        kwalletd.faults().latency(Duration.ofMillis(10)).failNext("readPassword", 1);
+        wallet.readPassword(handle, "Metrics", "key", APPID);
+        var readPassword = metrics.snapshot("readPassword");
+        assertEquals(2, readPassword.calls());
+        assertEquals(1, readPassword.errors());
+        assertEquals(0, readPassword.timeouts());
+        assertTrue(readPassword.maxNanos() >= Duration.ofMillis(10).toNanos());
+        assertEquals(1L, (long) metrics.getCalls().get("open"));
+        LOG.info("readPassword: {}", readPassword);
+    }
+
+    @Test
+    @DisplayName("Testing signal metrics and the MBean...")
+    public void signals() throws Exception {
+        SignalHandler.getInstance().handle(new KWallet.walletListDirty(Static.ObjectPaths.KWALLETD6));
+        assertEquals(1L, (long) metrics.getSignals().get("walletListDirty"));
+        var signals = ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(KWalletMetrics.OBJECT_NAME), "Signals");
+        assertNotNull(signals);
+    }
+
+    @Test
+    @DisplayName("Testing JFR events...")
+    public void flightRecorder() throws Exception {
+        var file = Files.createTempFile("kdewallet", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable("org.purejava.kwallet.Call");
+            recording.enable("org.purejava.kwallet.Signal");
+            recording.start();
+            var wallet = kwalletd.kdeWallet();
+            wallet.open(Static.DEFAULT_WALLET, 0L, APPID);
+            SignalHandler.getInstance().handle(new KWallet.walletListDirty(Static.ObjectPaths.KWALLETD6));
+            recording.stop();
+            recording.dump(file);
+            var events = RecordingFile.readAllEvents(file);
+            assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("org.purejava.kwallet.Call")
+                    && "open".equals(e.getString("method")) && "SUCCESS".equals(e.getString("status"))));
+            assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("org.purejava.kwallet.Signal")
+                    && "walletListDirty".equals(e.getString("signal"))));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    @DisplayName("Testing latency percentiles...")
+    public void percentiles() {
+        var histogram = new LatencyHistogram();
+        for (var i = 0; i < 99; i++) {
+            histogram.record(Duration.ofMillis(1).toNanos());
+        }
+        histogram.record(Duration.ofSeconds(1).toNanos());
+        assertTrue(histogram.getPercentileNanos(50) <= Duration.ofMillis(2).toNanos());
+        assertTrue(histogram.getPercentileNanos(99) <= Duration.ofMillis(2).toNanos());
+        assertEquals(Duration.ofSeconds(1).toNanos(), histogram.getPercentileNanos(100));
+    }
+}
@@ -0,0 +1,66 @@
+package org.purejava;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.purejava.kwallet.MapEntries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MapEntriesTest {
+    private static final Logger LOG = LoggerFactory.getLogger(MapEntriesTest.class);
+
+    @Test
+    @DisplayName("Testing decoding of a map with an empty entry...")
+    void testEmptyEntry() {
+        var me = new MapEntries();
+        assertTrue(me.setByteField(new byte[]{0,0,0,2,-1,-1,-1,-1,-1,-1,-1,-1,0,0,0,2,0,65,0,0,0,2,0,66}));
+        assertEquals(me.count(), 2);
+        assertTrue(me.hasValue("A", "B"));
+        assertTrue(me.hasValue("", ""));
+        LOG.info(me.toString());
+    }
+
+    @Test
+    @DisplayName("Testing maps with more than 255 entries and long values...")
+    void testLargeMap() {
+        var me = new MapEntries();
+        var longString = Stream.iterate("A", s -> s).limit(300).collect(Collectors.joining());
+        for (var i = 0; i < 1000; i++) {
+            me.storeEntry("key" + i, longString + i);
+        }
+        me.storeEntry("empty", null);
+        var read = new MapEntries();
+        assertTrue(read.setByteField(me.getByteField()));
+        assertEquals(read.count(), 1001);
+        assertTrue(read.hasValue("key999", longString + 999));
+        assertTrue(read.hasValue("empty", ""));
+        LOG.info("Successfully stored and retrieved {} entries.", read.count());
+    }
+
+    @Test
+    @DisplayName("Testing encoding into a reusable buffer...")
+    void testReusableBuffer() {
+        var me = new MapEntries();
+        me.storeEntry("A", "B");
+        var buffer = ByteBuffer.allocate(1024);
+        var encoded = me.writeTo(buffer);
+        assertSame(encoded, buffer);
+        assertEquals(encoded.remaining(), 16);
+        var read = new MapEntries();
+        assertTrue(read.setByteField(encoded));
+        assertTrue(read.hasValue("A", "B"));
+    }
+
+    @Test
+    @DisplayName("Testing rejection of truncated byte fields...")
+    void testTruncated() {
+        var me = new MapEntries();
+        assertFalse(me.setByteField(new byte[]{0,0,0,1,0,0,0,8,0,65}));
+    }
+}
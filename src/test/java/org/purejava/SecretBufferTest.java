@@ -0,0 +1,66 @@
+package org.purejava;
+
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.SecretBuffer;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.fake.FakeKWalletdTestBase;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SecretBufferTest extends FakeKWalletdTestBase {
+    private static final String PASSWORD = "p\u00e4ssw\u00f6rd-\ud834\udd1e";
+
+    @BeforeEach
+    public void beforeEach() {
+        kwalletd.storePassword(Static.DEFAULT_WALLET, "Folder", "password", PASSWORD);
+        kwalletd.storeEntry(Static.DEFAULT_WALLET, "Folder", "entry", new byte[]{1, 2, 3});
+    }
+
+    @Test
+    @DisplayName("Testing reading secrets into buffers...")
+    public void read() {
+        try (var password = wallet.readPasswordSecret(handle, "Folder", "password", APPID);
+             var entry = wallet.readEntrySecret(handle, "Folder", "entry", APPID);
+             var notAPassword = wallet.readPasswordSecret(handle, "Folder", "entry", APPID)) {
+            assertArrayEquals(PASSWORD.toCharArray(), password.toChars());
+            assertEquals(3, entry.length());
+            assertEquals(2, entry.asReadOnlyBuffer().get(1));
+            assertTrue(notAPassword.isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Testing a password entry that does not hold exactly one string...")
+    public void malformed() {
+        var trailing = new byte[]{0, 0, 0, 2, 0, 'x', 7};
+        assertEquals(0, wallet.writeEntry(handle, "Folder", "malformed", trailing, 1, APPID));
+        try (var password = wallet.readPasswordSecret(handle, "Folder", "malformed", APPID)) {
+            assertTrue(password.isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Testing writing secrets from buffers...")
+    public void write() {
+        try (var password = SecretBuffer.of(PASSWORD.toCharArray());
+             var entry = SecretBuffer.of(new byte[]{4, 5})) {
+            assertEquals(0, wallet.writePasswordSecret(handle, "Folder", "written", password, APPID));
+            assertEquals(0, wallet.writeEntrySecret(handle, "Folder", "stream", entry, APPID));
+            assertFalse(password.isClosed());
+        }
+        assertEquals(PASSWORD, wallet.readPassword(handle, "Folder", "written", APPID));
+        assertArrayEquals(new byte[]{4, 5}, wallet.readEntry(handle, "Folder", "stream", APPID));
+    }
+
+    @Test
+    @DisplayName("Testing wiping of a buffer...")
+    public void wipe() {
+        var secret = SecretBuffer.of(new byte[]{7, 7, 7});
+        var view = secret.asReadOnlyBuffer();
+        secret.close();
+        assertTrue(secret.isClosed());
+        assertEquals(0, view.get(0));
+        assertEquals(0, view.get(2));
+        assertThrows(IllegalStateException.class, secret::length);
+    }
+}
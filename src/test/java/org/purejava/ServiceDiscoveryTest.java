@@ -0,0 +1,69 @@
+package org.purejava;
+
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.ServiceDiscovery;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.fake.FakeKWalletdTestBase;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServiceDiscoveryTest extends FakeKWalletdTestBase {
+    private DBusConnection connection;
+
+    @BeforeEach
+    public void beforeEach() throws DBusException {
+        connection = DBusConnectionBuilder.forAddress(kwalletd.getAddress()).withShared(false).build();
+    }
+
+    @AfterEach
+    public void afterEach() {
+        connection.disconnect();
+    }
+
+    @Test
+    @DisplayName("Testing discoveries shared per connection...")
+    public void shared() {
+        var discovery = ServiceDiscovery.of(connection);
+        assertSame(discovery, ServiceDiscovery.of(connection));
+        assertNotSame(discovery, ServiceDiscovery.of(kwalletd.getConnection()));
+    }
+
+    @Test
+    @DisplayName("Testing a service that was set explicitly...")
+    public void use() {
+        var discovery = ServiceDiscovery.of(connection);
+        discovery.use(ServiceDiscovery.KWALLETD5);
+        assertEquals(ServiceDiscovery.KWALLETD5, discovery.resolve());
+        assertTrue(discovery.isAvailable());
+        discovery.use(null);
+        assertNull(discovery.resolve());
+    }
+
+    @Test
+    @DisplayName("Testing invalidation when the owner of a kwalletd name changes...")
+    public void nameOwnerChanged() throws DBusException, InterruptedException {
+        var discovery = ServiceDiscovery.of(connection);
+        discovery.resolve();
+        discovery.use(ServiceDiscovery.KWALLETD5);
+        var owner = DBusConnectionBuilder.forAddress(kwalletd.getAddress()).withShared(false).build();
+        try {
+            owner.requestBusName(Static.Service.KWALLETD5);
+            for (var i = 0; i < 100 && ServiceDiscovery.KWALLETD5.equals(discovery.resolve()); i++) {
+                Thread.sleep(20);
+            }
+            assertNotEquals(ServiceDiscovery.KWALLETD5, discovery.resolve());
+        } finally {
+            owner.disconnect();
+        }
+    }
+
+    @Test
+    @DisplayName("Testing discovery without a connection...")
+    public void noConnection() {
+        assertNull(ServiceDiscovery.of(null).resolve());
+        assertFalse(ServiceDiscovery.of(null).isAvailable());
+    }
+}
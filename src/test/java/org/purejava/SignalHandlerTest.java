@@ -0,0 +1,134 @@
+package org.purejava;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.KWallet;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.freedesktop.dbus.handlers.SignalHandler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignalHandlerTest {
+    private final SignalHandler signals = SignalHandler.getInstance();
+
+    @AfterEach
+    public void afterEach() {
+        signals.setHistorySize(SignalHandler.DEFAULT_HISTORY_SIZE);
+    }
+
+    private void folderUpdated(String folder) throws DBusException {
+        signals.handle(new KWallet.folderUpdated(Static.ObjectPaths.KWALLETD6, "Handler", folder));
+    }
+
+    @Test
+    @DisplayName("Testing the history keeping the newest signals...")
+    public void history() throws DBusException {
+        signals.setHistorySize(3);
+        for (var i = 0; i < 5; i++) folderUpdated("Folder" + i);
+        var history = signals.getHandledSignals(KWallet.folderUpdated.class);
+        assertEquals(3, history.size());
+        assertEquals("Folder4", history.get(0).b);
+        assertEquals("Folder2", history.get(2).b);
+        assertEquals("Folder4", signals.getLastHandledSignal(KWallet.folderUpdated.class).b);
+    }
+
+    @Test
+    @DisplayName("Testing the signal count across a resize of the history...")
+    public void resize() throws DBusException {
+        folderUpdated("Before");
+        var sequence = signals.getSequence();
+        signals.setHistorySize(10);
+        assertEquals(sequence, signals.getSequence());
+        assertNull(signals.getLastHandledSignal(KWallet.folderUpdated.class));
+        folderUpdated("After");
+        assertEquals(sequence + 1, signals.getSequence());
+        assertEquals("After", signals.getLastHandledSignal(KWallet.folderUpdated.class).b);
+    }
+
+    @Test
+    @DisplayName("Testing waiting for the next matching signal...")
+    public void next() throws Exception {
+        var next = signals.next(KWallet.folderUpdated.class, Static.ObjectPaths.KWALLETD6, fu -> fu.b.equals("Wanted"));
+        folderUpdated("Other");
+        assertFalse(next.isDone());
+        signals.handle(new KWallet.folderUpdated(Static.ObjectPaths.KWALLETD5, "Handler", "Wanted"));
+        assertFalse(next.isDone());
+        folderUpdated("Wanted");
+        assertEquals("Wanted", next.get(1, TimeUnit.SECONDS).b);
+    }
+
+    @Test
+    @DisplayName("Testing several waiters for the same signal...")
+    public void waiters() throws Exception {
+        var first = signals.next(KWallet.folderUpdated.class, null, null);
+        var second = signals.next(KWallet.folderUpdated.class, null, null);
+        folderUpdated("Both");
+        assertEquals("Both", first.get(1, TimeUnit.SECONDS).b);
+        assertSame(first.get(), second.get(1, TimeUnit.SECONDS));
+        var third = signals.next(KWallet.folderUpdated.class, null, null);
+        assertFalse(third.isDone());
+        third.cancel(false);
+        folderUpdated("Cancelled");
+        assertThrows(CancellationException.class, third::join);
+    }
+
+    @Test
+    @DisplayName("Testing a timeout while waiting for a signal...")
+    public void timeout() {
+        var next = signals.next(KWallet.walletDeleted.class, null, null, Duration.ofMillis(50));
+        var e = assertThrows(ExecutionException.class, () -> next.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof TimeoutException);
+    }
+
+    @Test
+    @DisplayName("Testing subscribing to a type of signal...")
+    public void subscribe() throws DBusException {
+        var received = new ArrayList<String>();
+        var other = new AtomicInteger();
+        try (var subscription = signals.subscribe(KWallet.folderUpdated.class, fu -> received.add(fu.b));
+             var ignored = signals.subscribe(KWallet.folderListUpdated.class, flu -> other.incrementAndGet())) {
+            assertEquals(KWallet.folderUpdated.class, subscription.getType());
+            folderUpdated("First");
+            folderUpdated("Second");
+        }
+        folderUpdated("Unsubscribed");
+        assertEquals(List.of("First", "Second"), received);
+        assertEquals(0, other.get());
+    }
+
+    @Test
+    @DisplayName("Testing a filtered subscription...")
+    public void filter() throws DBusException {
+        var received = new ArrayList<String>();
+        try (var subscription = signals.subscribe(KWallet.folderUpdated.class,
+                SignalHandler.forFolder("Handler", "Wanted"), fu -> received.add(fu.b))) {
+            folderUpdated("Other");
+            folderUpdated("Wanted");
+            subscription.close();
+            folderUpdated("Wanted");
+        }
+        assertEquals(List.of("Wanted"), received);
+    }
+
+    @Test
+    @DisplayName("Testing a failing listener...")
+    public void failingListener() throws DBusException {
+        var calls = new AtomicInteger();
+        try (var failing = signals.subscribe(KWallet.folderUpdated.class, fu -> {
+                 throw new IllegalStateException("Listener failed");
+             });
+             var working = signals.subscribe(KWallet.folderUpdated.class, fu -> calls.incrementAndGet())) {
+            folderUpdated("Folder");
+        }
+        assertEquals(1, calls.get());
+    }
+}
@@ -0,0 +1,111 @@
+package org.purejava;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.KWallet;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.freedesktop.dbus.handlers.SignalHandler;
+import org.purejava.kwallet.freedesktop.dbus.handlers.SignalPublisher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignalPublisherTest {
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void beforeEach() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    public void afterEach() {
+        executor.shutdownNow();
+    }
+
+    private static void folderUpdated(String folder) throws DBusException {
+        SignalHandler.getInstance().handle(new KWallet.folderUpdated(Static.ObjectPaths.KWALLETD6, "Publisher", folder));
+    }
+
+    @Test
+    @DisplayName("Testing a full buffer dropping the oldest signals...")
+    public void dropOldest() throws Exception {
+        var publisher = SignalHandler.getInstance().publisher(KWallet.folderUpdated.class, 4,
+                SignalPublisher.Overflow.DROP_OLDEST, executor);
+        var subscriber = new Recorder();
+        publisher.subscribe(subscriber);
+        var subscription = subscriber.subscription.get(5, TimeUnit.SECONDS);
+        for (var i = 0; i < 10; i++) folderUpdated("Folder" + i);
+        subscription.request(Long.MAX_VALUE);
+        assertEquals(List.of("Folder6", "Folder7", "Folder8", "Folder9"), subscriber.folders(4));
+        assertEquals(6, publisher.getDropped());
+        subscription.cancel();
+    }
+
+    @Test
+    @DisplayName("Testing conflation of signals per folder...")
+    public void conflate() throws Exception {
+        var publisher = SignalHandler.getInstance().publisher(KWallet.folderUpdated.class, 4,
+                SignalPublisher.Overflow.CONFLATE, executor);
+        var subscriber = new Recorder();
+        publisher.subscribe(subscriber);
+        var subscription = subscriber.subscription.get(5, TimeUnit.SECONDS);
+        for (var i = 0; i < 1000; i++) folderUpdated(i % 2 == 0 ? "Even" : "Odd");
+        subscription.request(10);
+        assertEquals(List.of("Even", "Odd"), subscriber.folders(2));
+        assertEquals(0, publisher.getDropped());
+        assertNotEquals(Thread.currentThread(), subscriber.thread);
+        subscription.cancel();
+    }
+
+    @Test
+    @DisplayName("Testing an invalid request...")
+    public void invalidRequest() throws Exception {
+        var subscriber = new Recorder();
+        SignalHandler.getInstance().publisher(KWallet.folderUpdated.class).subscribe(subscriber);
+        subscriber.subscription.get(5, TimeUnit.SECONDS).request(0);
+        assertTrue(subscriber.error.get(5, TimeUnit.SECONDS) instanceof IllegalArgumentException);
+    }
+
+    private static class Recorder implements Flow.Subscriber<KWallet.folderUpdated> {
+        private final CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+        private final CompletableFuture<Throwable> error = new CompletableFuture<>();
+        private final BlockingQueue<String> folders = new LinkedBlockingQueue<>();
+        private volatile Thread thread;
+
+        List<String> folders(int count) throws InterruptedException {
+            var result = new ArrayList<String>();
+            for (var i = 0; i < count; i++) {
+                var folder = folders.poll(5, TimeUnit.SECONDS);
+                if (null == folder) break;
+                result.add(folder);
+            }
+            // nothing more than expected arrives
+            assertNull(folders.poll(100, TimeUnit.MILLISECONDS));
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription.complete(subscription);
+        }
+
+        @Override
+        public void onNext(KWallet.folderUpdated item) {
+            thread = Thread.currentThread();
+            folders.add(item.b);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.complete(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.purejava;
+
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.SyncCoalescer;
+import org.purejava.kwallet.fake.FakeKWalletdTestBase;
+import org.purejava.kwallet.metrics.KWalletMetrics;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SyncCoalescerTest extends FakeKWalletdTestBase {
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Test
+    @DisplayName("Testing coalescing of a burst of syncs...")
+    public void burst() throws Exception {
+        try (var coalescer = new SyncCoalescer(wallet, Duration.ofMillis(500), Duration.ofSeconds(30))) {
+            var first = coalescer.request(handle, APPID);
+            for (var i = 0; i < 1000; i++) {
+                wallet.writePassword(handle, "Folder", "key" + (i % 10), "value" + i, APPID);
+                assertSame(first, coalescer.request(handle, APPID));
+            }
+            assertEquals(1001, coalescer.getRequests());
+            first.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            assertEquals(1, coalescer.getSyncs());
+            assertTrue(kwalletd.awaitCalls("sync", 1, TIMEOUT));
+            assertEquals(1, kwalletd.calls("sync"));
+        }
+    }
+
+    @Test
+    @DisplayName("Testing the maximum delay of a sync...")
+    public void maxDelay() throws Exception {
+        try (var coalescer = new SyncCoalescer(wallet, Duration.ofMillis(100), Duration.ofMillis(200))) {
+            var start = System.nanoTime();
+            var sent = coalescer.request(handle, APPID);
+            while (!sent.isDone()) {
+                try {
+                    sent.get(10, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // keep requesting faster than the quiet period
+                    coalescer.request(handle, APPID);
+                }
+            }
+            var elapsed = System.nanoTime() - start;
+            assertTrue(elapsed >= Duration.ofMillis(200).toNanos());
+            assertTrue(elapsed < TIMEOUT.toNanos());
+            assertTrue(coalescer.getRequests() > 10);
+            assertEquals(1, coalescer.getSyncs());
+        }
+    }
+
+    @Test
+    @DisplayName("Testing flush on close...")
+    public void flushOnClose() throws InterruptedException {
+        var coalescer = new SyncCoalescer(wallet, Duration.ofSeconds(10), Duration.ofSeconds(60));
+        var sent = coalescer.request(handle, APPID);
+        coalescer.request(handle, APPID);
+        assertEquals(0, coalescer.getSyncs());
+        assertFalse(sent.isDone());
+        coalescer.close();
+        assertTrue(sent.isDone());
+        assertEquals(1, coalescer.getSyncs());
+        assertTrue(kwalletd.awaitCalls("sync", 1, TIMEOUT));
+        assertEquals(1, kwalletd.calls("sync"));
+    }
+
+    @Test
+    @DisplayName("Testing syncs sent without a reply...")
+    public void noReply() throws InterruptedException {
+        try (var metrics = KWalletMetrics.register()) {
+            var coalescer = new SyncCoalescer(wallet);
+            coalescer.request(handle, APPID);
+            coalescer.close();
+            assertTrue(kwalletd.awaitCalls("sync", 1, TIMEOUT));
+            assertTrue(wallet.isOpen(handle));
+            var sync = metrics.snapshot("sync");
+            assertEquals(0, sync.calls());
+            assertEquals(0, sync.timeouts());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.purejava;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.WalletExporter;
+import org.purejava.kwallet.fake.FakeKWalletdTestBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WalletExporterTest extends FakeKWalletdTestBase {
+    private static final Logger LOG = LoggerFactory.getLogger(WalletExporterTest.class);
+    private static final int FOLDERS = 20;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    public void beforeEach() {
+        for (var i = 0; i < FOLDERS; i++) {
+            kwalletd.storePassword(Static.DEFAULT_WALLET, "Folder" + i, "password", "secret-" + i);
+            kwalletd.storeEntry(Static.DEFAULT_WALLET, "Folder" + i, "entry", new byte[100_000]);
+        }
+    }
+
+    @Test
+    @DisplayName("Testing export of a wallet...")
+    public void export() throws IOException {
+        var file = dir.resolve("wallet.kwsn");
+        var summary = new WalletExporter(wallet, handle, APPID).export(file);
+        assertEquals(FOLDERS, summary.folders());
+        assertEquals(2 * FOLDERS, summary.entries());
+        var content = Files.readAllBytes(file);
+        assertArrayEquals("KWSN".getBytes(StandardCharsets.US_ASCII), Arrays.copyOf(content, 4));
+        assertTrue(new String(content, StandardCharsets.UTF_8).contains("secret-7"));
+        assertFalse(Files.exists(dir.resolve("wallet.kwsn.tmp")));
+        LOG.info("Exported {} folders into {} bytes", summary.folders(), content.length);
+    }
+
+    @Test
+    @DisplayName("Testing encrypted export of a wallet...")
+    public void exportEncrypted() throws IOException {
+        var file = dir.resolve("wallet.kwsn");
+        var summary = new WalletExporter(wallet, handle, APPID, 2).export(file, "passphrase".toCharArray());
+        assertEquals(2 * FOLDERS, summary.entries());
+        var content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertTrue(content.startsWith("KWSN"));
+        assertFalse(content.contains("secret-7"));
+        assertFalse(content.contains("Folder7"));
+    }
+
+    @Test
+    @DisplayName("Testing a failing export...")
+    public void exportFails() {
+        var file = dir.resolve("wallet.kwsn");
+        kwalletd.faults().fail("passwordList");
+        assertThrows(IOException.class, () -> new WalletExporter(wallet, handle, APPID).export(file));
+        assertFalse(Files.exists(file));
+        assertFalse(Files.exists(dir.resolve("wallet.kwsn.tmp")));
+    }
+}
@@ -0,0 +1,128 @@
+package org.purejava;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.WalletExporter;
+import org.purejava.kwallet.WalletImporter;
+import org.purejava.kwallet.fake.FakeKWalletd;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WalletImporterTest {
+    private static final Logger LOG = LoggerFactory.getLogger(WalletImporterTest.class);
+    private static final String APPID = "Tester";
+    private static final int FOLDERS = 10;
+    private static final int KEYS = 20;
+
+    @TempDir
+    Path dir;
+
+    private Path export(char[] passphrase) throws DBusException, IOException {
+        var file = dir.resolve("wallet.kwsn");
+        try (var kwalletd = new FakeKWalletd()) {
+            for (var i = 0; i < FOLDERS; i++) {
+                for (var j = 0; j < KEYS; j++) {
+                    kwalletd.storePassword(Static.DEFAULT_WALLET, "Folder" + i, "password" + j, "secret-" + i + "-" + j);
+                }
+                kwalletd.storeEntry(Static.DEFAULT_WALLET, "Folder" + i, "entry", new byte[]{(byte) i, 1, 2});
+                kwalletd.storeMap(Static.DEFAULT_WALLET, "Folder" + i, "map", new byte[]{0, 0, 0, 0});
+            }
+            var wallet = kwalletd.kdeWallet();
+            var handle = wallet.open(Static.DEFAULT_WALLET, 0L, APPID);
+            new WalletExporter(wallet, handle, APPID).export(file, passphrase);
+        }
+        return file;
+    }
+
+    @Test
+    @DisplayName("Testing restore of an exported wallet...")
+    public void roundTrip() throws DBusException, IOException, InterruptedException {
+        var passphrase = "passphrase".toCharArray();
+        var file = export(passphrase);
+        try (var kwalletd = new FakeKWalletd()) {
+            var wallet = kwalletd.kdeWallet();
+            var handle = wallet.open(Static.DEFAULT_WALLET, 0L, APPID);
+            var summary = new WalletImporter(wallet, handle, APPID, 16).importFrom(file, passphrase);
+            assertEquals(FOLDERS, summary.folders());
+            assertEquals(FOLDERS * (KEYS + 2), summary.entries());
+            assertEquals(0, summary.failed());
+            assertEquals("secret-3-7", wallet.readPassword(handle, "Folder3", "password7", APPID));
+            assertArrayEquals(new byte[]{5, 1, 2}, wallet.readEntry(handle, "Folder5", "entry", APPID));
+            assertEquals(3, wallet.entryType(handle, "Folder5", "map", APPID));
+            assertEquals(FOLDERS, kwalletd.calls("createFolder"));
+            assertTrue(kwalletd.awaitCalls("sync", 1, Duration.ofSeconds(5)));
+            assertEquals(1, kwalletd.calls("sync"));
+        }
+    }
+
+    @Test
+    @DisplayName("Testing restore with a wrong passphrase...")
+    public void wrongPassphrase() throws DBusException, IOException {
+        var file = export("passphrase".toCharArray());
+        try (var kwalletd = new FakeKWalletd()) {
+            var wallet = kwalletd.kdeWallet();
+            var handle = wallet.open(Static.DEFAULT_WALLET, 0L, APPID);
+            assertThrows(IOException.class, () -> new WalletImporter(wallet, handle, APPID).importFrom(file, "wrong".toCharArray()));
+            assertTrue(wallet.folderList(handle, APPID).isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Testing restore of a truncated snapshot...")
+    public void truncated() throws DBusException, IOException {
+        var file = export(null);
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 1);
+        }
+        try (var kwalletd = new FakeKWalletd()) {
+            var wallet = kwalletd.kdeWallet();
+            var handle = wallet.open(Static.DEFAULT_WALLET, 0L, APPID);
+            assertThrows(IOException.class, () -> new WalletImporter(wallet, handle, APPID).importFrom(file));
+            LOG.info("Restored {} folders before the snapshot ended", wallet.folderList(handle, APPID).size());
+        }
+    }
+
+    @Test
+    @DisplayName("Testing restore of a snapshot with an oversized chunk...")
+    public void oversizedChunk() throws DBusException, IOException {
+        var size = 64 * 1024 + 1;
+        var snapshot = ByteBuffer.allocate(10 + size)
+                .put(new byte[]{'K', 'W', 'S', 'N', 1, 0})
+                .putInt(0x80000000 | size);
+        var file = dir.resolve("oversized.kwsn");
+        Files.write(file, snapshot.array());
+        try (var kwalletd = new FakeKWalletd()) {
+            var wallet = kwalletd.kdeWallet();
+            var handle = wallet.open(Static.DEFAULT_WALLET, 0L, APPID);
+            assertThrows(IOException.class, () -> new WalletImporter(wallet, handle, APPID).importFrom(file));
+        }
+    }
+
+    @Test
+    @DisplayName("Testing a snapshot with an excessive iteration count...")
+    public void excessiveIterations() throws DBusException, IOException {
+        var snapshot = ByteBuffer.allocate(6 + 4 + 16 + 8)
+                .put(new byte[]{'K', 'W', 'S', 'N', 1, 1})
+                .putInt(Integer.MAX_VALUE);
+        var file = dir.resolve("iterations.kwsn");
+        Files.write(file, snapshot.array());
+        try (var kwalletd = new FakeKWalletd()) {
+            var wallet = kwalletd.kdeWallet();
+            var handle = wallet.open(Static.DEFAULT_WALLET, 0L, APPID);
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () ->
+                    assertThrows(IOException.class, () -> new WalletImporter(wallet, handle, APPID).importFrom(file, "passphrase".toCharArray())));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.purejava;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.purejava.kwallet.KDEWallet;
+import org.purejava.kwallet.KWallet;
+import org.purejava.kwallet.ReplicatedKWallet;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.WalletReplica;
+import org.purejava.kwallet.fake.FakeKWalletdTestBase;
+import org.purejava.kwallet.freedesktop.dbus.handlers.SignalHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WalletReplicaTest extends FakeKWalletdTestBase {
+    private static final char[] PASSPHRASE = "passphrase".toCharArray();
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    public void beforeEach() {
+        kwalletd.storePassword(Static.DEFAULT_WALLET, "Credentials", "token", "secret-token");
+        kwalletd.storeEntry(Static.DEFAULT_WALLET, "Credentials", "certificate", new byte[]{1, 2, 3});
+        kwalletd.storePassword(Static.DEFAULT_WALLET, "Other", "password", "not replicated");
+    }
+
+    private WalletReplica replica(Path file) {
+        return new WalletReplica(wallet, Static.DEFAULT_WALLET, APPID, List.of("Credentials"), file, PASSPHRASE);
+    }
+
+    @Test
+    @DisplayName("Testing reconciliation of a new replica...")
+    public void reconcile() throws Exception {
+        var file = dir.resolve("replica.kwsn");
+        try (var replica = replica(file)) {
+            replica.reconciled().get(5, TimeUnit.SECONDS);
+            assertEquals("secret-token", replica.readPassword("Credentials", "token"));
+            assertArrayEquals(new byte[]{1, 2, 3}, replica.readEntry("Credentials", "certificate"));
+            assertEquals("", replica.readPassword("Other", "password"));
+        }
+        assertTrue(Files.exists(file));
+        assertFalse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).contains("secret-token"));
+    }
+
+    @Test
+    @DisplayName("Testing a cold start from the replica...")
+    public void coldStart() throws Exception {
+        var file = dir.resolve("replica.kwsn");
+        try (var replica = replica(file)) {
+            replica.reconciled().get(5, TimeUnit.SECONDS);
+        }
+        kwalletd.faults().fail("open");
+        var opened = kwalletd.calls("open");
+        try (var replica = replica(file)) {
+            assertEquals("secret-token", replica.readPassword("Credentials", "token"));
+            assertEquals(List.of("certificate", "token"), replica.entryList("Credentials").stream().sorted().toList());
+            assertFalse(replica.isReconciled());
+        }
+        assertTrue(kwalletd.calls("open") <= opened + 1);
+    }
+
+    @Test
+    @DisplayName("Testing refresh of a folder on folderUpdated...")
+    public void folderUpdated() throws Exception {
+        try (var replica = replica(dir.resolve("replica.kwsn"))) {
+            replica.reconciled().get(5, TimeUnit.SECONDS);
+            kwalletd.storePassword(Static.DEFAULT_WALLET, "Credentials", "token", "refreshed-token");
+            SignalHandler.getInstance().handle(new KWallet.folderUpdated(kwalletd.getService().objectPath(),
+                    Static.DEFAULT_WALLET, "Credentials"));
+            for (var i = 0; i < 100 && !"refreshed-token".equals(replica.readPassword("Credentials", "token")); i++) {
+                Thread.sleep(50);
+            }
+            assertEquals("refreshed-token", replica.readPassword("Credentials", "token"));
+        }
+    }
+
+    @Test
+    @DisplayName("Testing a replica with a wrong passphrase...")
+    public void wrongPassphrase() throws Exception {
+        var file = dir.resolve("replica.kwsn");
+        try (var replica = replica(file)) {
+            replica.reconciled().get(5, TimeUnit.SECONDS);
+        }
+        kwalletd.faults().fail("open");
+        try (var replica = new WalletReplica(wallet, Static.DEFAULT_WALLET, APPID, List.of("Credentials"), file,
+                "wrong".toCharArray())) {
+            assertEquals("", replica.readPassword("Credentials", "token"));
+        }
+    }
+
+    @Test
+    @DisplayName("Testing persisting pending refreshes on close...")
+    public void persistOnClose() throws Exception {
+        var file = dir.resolve("replica.kwsn");
+        try (var replica = replica(file)) {
+            replica.reconciled().get(5, TimeUnit.SECONDS);
+            kwalletd.storePassword(Static.DEFAULT_WALLET, "Credentials", "token", "refreshed-token");
+            replica.refresh();
+            for (var i = 0; i < 100 && !"refreshed-token".equals(replica.readPassword("Credentials", "token")); i++) {
+                Thread.sleep(50);
+            }
+        }
+        kwalletd.faults().fail("open");
+        try (var replica = replica(file)) {
+            assertEquals("refreshed-token", replica.readPassword("Credentials", "token"));
+        }
+    }
+
+    @Test
+    @DisplayName("Testing reads of a wallet answered from the replica...")
+    public void replicatedReads() throws Exception {
+        var delegate = new KDEWallet(kwalletd.newConnection(), kwalletd.getService());
+        try (var replicated = new ReplicatedKWallet(delegate, replica(dir.resolve("replica.kwsn")))) {
+            replicated.getReplica().reconciled().get(5, TimeUnit.SECONDS);
+            var h = replicated.open(Static.DEFAULT_WALLET, 0L, APPID);
+            var reads = kwalletd.calls("readPassword");
+            assertEquals("secret-token", replicated.readPassword(h, "Credentials", "token", APPID));
+            assertTrue(replicated.hasEntry(h, "Credentials", "certificate", APPID));
+            assertEquals(List.of("certificate", "token"), replicated.entryList(h, "Credentials", APPID));
+            assertEquals(reads, kwalletd.calls("readPassword"));
+
+            assertEquals("not replicated", replicated.readPassword(h, "Other", "password", APPID));
+            assertEquals(reads + 1, kwalletd.calls("readPassword"));
+
+            assertEquals(0, replicated.writePassword(h, "Credentials", "token", "written-token", APPID));
+            assertEquals("written-token", replicated.readPassword(h, "Credentials", "token", APPID));
+        }
+    }
+}
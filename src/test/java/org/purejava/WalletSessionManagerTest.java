@@ -0,0 +1,79 @@
+package org.purejava;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.KWallet;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.WalletSessionManager;
+import org.purejava.kwallet.fake.FakeKWalletdTestBase;
+import org.purejava.kwallet.freedesktop.dbus.handlers.SignalHandler;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WalletSessionManagerTest extends FakeKWalletdTestBase {
+    private static final String SESSION_APPID = "Sessions";
+
+    private int withHandle(WalletSessionManager sessions) {
+        return sessions.withHandle(Static.DEFAULT_WALLET, SESSION_APPID, h -> h);
+    }
+
+    private void awaitCloses(long expected) throws InterruptedException {
+        for (var i = 0; i < 100 && kwalletd.calls("close") < expected; i++) Thread.sleep(20);
+    }
+
+    @Test
+    @DisplayName("Testing reuse of a handle...")
+    public void reuse() {
+        var opened = kwalletd.calls("open");
+        try (var sessions = new WalletSessionManager(wallet)) {
+            var h = withHandle(sessions);
+            assertTrue(h > 0);
+            assertEquals(h, withHandle(sessions));
+            assertEquals(opened + 1, kwalletd.calls("open"));
+        }
+        assertEquals(1, kwalletd.calls("close"));
+    }
+
+    @Test
+    @DisplayName("Testing closing of an idle handle...")
+    public void idle() throws InterruptedException {
+        try (var sessions = new WalletSessionManager(wallet, 0, Duration.ofMillis(100))) {
+            withHandle(sessions);
+            awaitCloses(1);
+            assertEquals(1, kwalletd.calls("close"));
+            var opened = kwalletd.calls("open");
+            assertTrue(withHandle(sessions) > 0);
+            assertEquals(opened + 1, kwalletd.calls("open"));
+        }
+    }
+
+    @Test
+    @DisplayName("Testing a lease keeping a handle open...")
+    public void lease() {
+        try (var sessions = new WalletSessionManager(wallet, 0, Duration.ofMillis(50))) {
+            var closed = sessions.withHandle(Static.DEFAULT_WALLET, SESSION_APPID, h -> {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return kwalletd.calls("close");
+            });
+            assertEquals(0, closed.longValue());
+        }
+    }
+
+    @Test
+    @DisplayName("Testing invalidation on walletClosedId...")
+    public void walletClosed() throws DBusException {
+        try (var sessions = new WalletSessionManager(wallet)) {
+            var h = withHandle(sessions);
+            var opened = kwalletd.calls("open");
+            SignalHandler.getInstance().handle(new KWallet.walletClosedId(kwalletd.getService().objectPath(), h));
+            withHandle(sessions);
+            assertEquals(opened + 1, kwalletd.calls("open"));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.purejava;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.junit.jupiter.api.*;
+import org.purejava.kwallet.KDEWallet;
+import org.purejava.kwallet.Static;
+import org.purejava.kwallet.WriteBehindKWallet;
+import org.purejava.kwallet.fake.FakeKWalletdTestBase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteBehindKWalletTest extends FakeKWalletdTestBase {
+
+    @BeforeEach
+    public void beforeEach() {
+        kwalletd.storePassword(Static.DEFAULT_WALLET, "Tokens", "stale", "stale-token");
+    }
+
+    private WriteBehindKWallet writeBehind(Duration flushInterval) throws DBusException {
+        return new WriteBehindKWallet(new KDEWallet(kwalletd.newConnection(), kwalletd.getService()), flushInterval, 1024);
+    }
+
+    @Test
+    @DisplayName("Testing coalescing of repeated writes...")
+    public void coalesce() throws DBusException {
+        try (var buffered = writeBehind(Duration.ofMinutes(1))) {
+            for (var i = 0; i < 100; i++) {
+                assertEquals(0, buffered.writePassword(handle, "Tokens", "access", "token-" + i, APPID));
+            }
+            assertEquals("token-99", buffered.readPassword(handle, "Tokens", "access", APPID));
+            assertEquals(0, kwalletd.calls("writePassword"));
+            assertEquals(0, kwalletd.calls("readPassword"));
+            assertEquals(1, buffered.getPending());
+
+            assertTrue(buffered.flush());
+            assertEquals(1, kwalletd.calls("writePassword"));
+            assertEquals(0, buffered.getPending());
+            assertEquals("token-99", wallet.readPassword(handle, "Tokens", "access", APPID));
+        }
+    }
+
+    @Test
+    @DisplayName("Testing reads of buffered mutations...")
+    public void readPending() throws DBusException {
+        try (var buffered = writeBehind(Duration.ofMinutes(1))) {
+            buffered.removeEntry(handle, "Tokens", "stale", APPID);
+            buffered.writeEntry(handle, "Certificates", "root", new byte[]{1, 2}, APPID);
+            assertFalse(buffered.hasEntry(handle, "Tokens", "stale", APPID));
+            assertTrue(buffered.entryList(handle, "Tokens", APPID).isEmpty());
+            assertTrue(buffered.folderList(handle, APPID).contains("Certificates"));
+            assertArrayEquals(new byte[]{1, 2}, buffered.readEntry(handle, "Certificates", "root", APPID));
+            assertTrue(wallet.hasEntry(handle, "Tokens", "stale", APPID));
+        }
+        assertFalse(wallet.hasEntry(handle, "Tokens", "stale", APPID));
+        assertArrayEquals(new byte[]{1, 2}, wallet.readEntry(handle, "Certificates", "root", APPID));
+    }
+
+    @Test
+    @DisplayName("Testing a buffered password written as an entry...")
+    public void typedPassword() throws DBusException {
+        var chars = "secret".getBytes(StandardCharsets.UTF_16BE);
+        var entry = ByteBuffer.allocate(4 + chars.length).putInt(chars.length).put(chars).array();
+        try (var buffered = writeBehind(Duration.ofMinutes(1))) {
+            assertEquals(0, buffered.writeEntry(handle, "Tokens", "typed", entry, 1, APPID));
+            assertEquals(1, buffered.entryType(handle, "Tokens", "typed", APPID));
+            assertEquals("secret", buffered.readPassword(handle, "Tokens", "typed", APPID));
+            assertEquals("secret", buffered.passwordList(handle, "Tokens", APPID).get("typed"));
+            assertArrayEquals(entry, buffered.readEntry(handle, "Tokens", "typed", APPID));
+
+            assertTrue(buffered.flush());
+            assertEquals(1, buffered.getWritten());
+            assertEquals(0, buffered.getFailed());
+        }
+        assertEquals(1, wallet.entryType(handle, "Tokens", "typed", APPID));
+        assertEquals("secret", wallet.readPassword(handle, "Tokens", "typed", APPID));
+    }
+
+    @Test
+    @DisplayName("Testing flushing in the background...")
+    public void flushInterval() throws DBusException, InterruptedException {
+        try (var buffered = writeBehind(Duration.ofMillis(100))) {
+            buffered.writePassword(handle, "Tokens", "access", "token", APPID);
+            for (var i = 0; i < 100 && buffered.getWritten() == 0; i++) Thread.sleep(20);
+            assertEquals(1, buffered.getWritten());
+            assertEquals("token", wallet.readPassword(handle, "Tokens", "access", APPID));
+        }
+    }
+
+    @Test
+    @DisplayName("Testing a failing buffered write...")
+    public void failure() throws DBusException {
+        try (var buffered = writeBehind(Duration.ofMinutes(1))) {
+            kwalletd.faults().fail("writePassword");
+            buffered.writePassword(handle, "Tokens", "access", "token", APPID);
+            assertFalse(buffered.flush());
+            assertEquals(1, buffered.getFailed());
+            assertEquals("", buffered.readPassword(handle, "Tokens", "access", APPID));
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.purejava.kwallet.fake;
+
+import org.freedesktop.dbus.connections.BusAddress;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.connections.transports.TransportBuilder;
+import org.freedesktop.dbus.daemon.EmbeddedDBusDaemon;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.purejava.kwallet.KDEWallet;
+import org.purejava.kwallet.ServiceDiscovery;
+import org.purejava.kwallet.Static;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process kwallet daemon for tests and benchmarks. It starts an embedded D-Bus daemon on a private socket,
+ * exports an in-memory <code>org.kde.KWallet</code> object on it under the name and path of kwalletd6
+ * (or kwalletd5) and emits the same signals kwalletd does. Neither a session bus nor a running kwalletd is needed.
+ * <pre>{@code
+ * try (var kwalletd = new FakeKWalletd()) {
+ *     kwalletd.faults().latency(Duration.ofMillis(5)).failNext("readPassword", 1);
+ *     var wallet = kwalletd.kdeWallet();
+ *     var handle = wallet.open(Static.DEFAULT_WALLET, 0L, "Tester");
+ *     ...
+ * }
+ * }</pre>
+ */
+public class FakeKWalletd implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FakeKWalletd.class);
+    private static final long STARTUP_TIMEOUT = 5000L;
+
+    private final ServiceDiscovery.Service service;
+    private final BusAddress address;
+    private final EmbeddedDBusDaemon daemon;
+    private final DBusConnection serviceConnection;
+    private final DBusConnection connection;
+    private final List<DBusConnection> connections = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor;
+    private final FaultInjection faults;
+    private final InMemoryKWallet kwalletd;
+
+    public FakeKWalletd() throws DBusException {
+        this(ServiceDiscovery.KWALLETD6, 0L);
+    }
+
+    /**
+     * @param service The kwallet daemon to impersonate.
+     * @param seed    Seed for the random latency and failures, so that runs can be repeated.
+     * @throws DBusException The embedded bus could not be started.
+     */
+    public FakeKWalletd(ServiceDiscovery.Service service, long seed) throws DBusException {
+        this.service = service;
+        var listenAddress = TransportBuilder.createDynamicSession("UNIX", true);
+        this.address = listenAddress.removeListenerAddress();
+        this.daemon = new EmbeddedDBusDaemon(listenAddress);
+        this.daemon.startInBackgroundAndWait(STARTUP_TIMEOUT);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            var thread = new Thread(r, "fake-kwalletd");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.faults = new FaultInjection(seed);
+        this.serviceConnection = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+        this.kwalletd = new InMemoryKWallet(service.objectPath(), Static.DEFAULT_WALLET, faults,
+                serviceConnection::sendMessage, executor);
+        serviceConnection.requestBusName(service.name());
+        serviceConnection.exportObject(service.objectPath(), kwalletd);
+        this.connection = newConnection();
+        LOG.debug("Fake {} listening on {}", service.name(), address);
+    }
+
+    /**
+     * The connection of the default client to the fake daemon.
+     *
+     * @return The connection, it gets closed with the daemon.
+     */
+    public DBusConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Open another client connection to the fake daemon, e.g. to simulate a second application.
+     *
+     * @return The connection, it gets closed with the daemon.
+     * @throws DBusException The connection could not be established.
+     */
+    public DBusConnection newConnection() throws DBusException {
+        var client = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+        ServiceDiscovery.of(client).use(service);
+        connections.add(client);
+        return client;
+    }
+
+    /**
+     * A wallet client connected to the fake daemon.
+     *
+     * @return A client using the default connection.
+     */
+    public KDEWallet kdeWallet() {
+        return new KDEWallet(connection, service);
+    }
+
+    public ServiceDiscovery.Service getService() {
+        return service;
+    }
+
+    public BusAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Latency and failures applied to the method calls received by the daemon.
+     *
+     * @return The fault configuration.
+     */
+    public FaultInjection faults() {
+        return faults;
+    }
+
+    /**
+     * Number of calls of a method received so far, including failed ones.
+     *
+     * @param method Name of the method, e.g. <code>sync</code>.
+     * @return The number of calls.
+     */
+    public long calls(String method) {
+        return kwalletd.calls(method);
+    }
+
+    /**
+     * Wait until the daemon has received a number of calls of a method, e.g. of calls sent without a reply.
+     *
+     * @param method  Name of the method, e.g. <code>sync</code>.
+     * @param count   The number of calls to wait for.
+     * @param timeout Maximum time to wait.
+     * @return True if the calls have been received, false if the timeout elapsed before.
+     * @throws InterruptedException The waiting thread was interrupted.
+     */
+    public boolean awaitCalls(String method, long count, Duration timeout) throws InterruptedException {
+        return kwalletd.awaitCalls(method, count, timeout);
+    }
+
+    /**
+     * Store a password in a wallet, creating the wallet and the folder if necessary. No signals are emitted.
+     *
+     * @param wallet The wallet.
+     * @param folder The folder.
+     * @param key    The key of the entry.
+     * @param value  The password.
+     */
+    public void storePassword(String wallet, String folder, String key, String value) {
+        kwalletd.putPassword(wallet, folder, key, value);
+    }
+
+    /**
+     * Store binary data in a wallet, creating the wallet and the folder if necessary. No signals are emitted.
+     *
+     * @param wallet The wallet.
+     * @param folder The folder.
+     * @param key    The key of the entry.
+     * @param value  The data.
+     */
+    public void storeEntry(String wallet, String folder, String key, byte[] value) {
+        kwalletd.put(wallet, folder, key, InMemoryKWallet.STREAM, value);
+    }
+
+    /**
+     * Store a map, as encoded by {@link org.purejava.kwallet.MapEntries}, in a wallet, creating the wallet
+     * and the folder if necessary. No signals are emitted.
+     *
+     * @param wallet The wallet.
+     * @param folder The folder.
+     * @param key    The key of the entry.
+     * @param value  The encoded map.
+     */
+    public void storeMap(String wallet, String folder, String key, byte[] value) {
+        kwalletd.put(wallet, folder, key, InMemoryKWallet.MAP, value);
+    }
+
+    /**
+     * Stop the daemon and close all connections to it.
+     */
+    @Override
+    public void close() {
+        connections.forEach(DBusConnection::disconnect);
+        serviceConnection.disconnect();
+        executor.shutdownNow();
+        try {
+            daemon.close();
+        } catch (IOException e) {
+            LOG.error(e.toString(), e.getCause());
+        }
+    }
+}
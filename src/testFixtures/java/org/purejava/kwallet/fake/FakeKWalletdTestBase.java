@@ -0,0 +1,33 @@
+package org.purejava.kwallet.fake;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.purejava.kwallet.KDEWallet;
+import org.purejava.kwallet.Static;
+
+/**
+ * Base class for tests against a {@link FakeKWalletd}. Before each test a new daemon is started and the default
+ * wallet is opened, after each test the daemon is stopped again. The <code>@BeforeEach</code> methods of a
+ * subclass run after the wallet has been opened, so they can store test data and configure faults.
+ */
+public abstract class FakeKWalletdTestBase {
+
+    protected static final String APPID = "Tester";
+
+    protected FakeKWalletd kwalletd;
+    protected KDEWallet wallet;
+    protected int handle;
+
+    @BeforeEach
+    public void startKWalletd() throws DBusException {
+        kwalletd = new FakeKWalletd();
+        wallet = kwalletd.kdeWallet();
+        handle = wallet.open(Static.DEFAULT_WALLET, 0L, APPID);
+    }
+
+    @AfterEach
+    public void stopKWalletd() {
+        kwalletd.close();
+    }
+}
@@ -0,0 +1,129 @@
+package org.purejava.kwallet.fake;
+
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latency and failures applied by {@link FakeKWalletd} to incoming method calls. All settings can be
+ * changed while the daemon is running and apply to the calls received afterwards.
+ * <p>
+ * A failing call is answered with a D-Bus error instead of a reply. Calls longer than the reply timeout
+ * of the client are seen as timeouts by the client.
+ */
+public class FaultInjection {
+
+    private volatile long latencyNanos = 0;
+    private volatile long jitterNanos = 0;
+    private volatile double failureRate = 0.0;
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicInteger> failNext = new ConcurrentHashMap<>();
+    private final Random random;
+
+    FaultInjection(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Delay every reply.
+     *
+     * @param latency Fixed delay added to every call.
+     * @param jitter  Upper bound of an additional, uniformly distributed random delay.
+     * @return This configuration.
+     */
+    public FaultInjection latency(Duration latency, Duration jitter) {
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+        return this;
+    }
+
+    public FaultInjection latency(Duration latency) {
+        return latency(latency, Duration.ZERO);
+    }
+
+    /**
+     * Let calls fail randomly.
+     *
+     * @param failureRate Probability between 0 and 1, that a call fails.
+     * @return This configuration.
+     */
+    public FaultInjection failureRate(double failureRate) {
+        if (failureRate < 0.0 || failureRate > 1.0) throw new IllegalArgumentException("Failure rate must be between 0 and 1");
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    /**
+     * Let all calls of the given methods fail until {@link #reset()} is called.
+     *
+     * @param methods Names of the methods, e.g. <code>readPassword</code>.
+     * @return This configuration.
+     */
+    public FaultInjection fail(String... methods) {
+        failing.addAll(Set.of(methods));
+        return this;
+    }
+
+    /**
+     * Let the next calls of a method fail.
+     *
+     * @param method Name of the method.
+     * @param times  Number of calls to fail.
+     * @return This configuration.
+     */
+    public FaultInjection failNext(String method, int times) {
+        failNext.computeIfAbsent(method, m -> new AtomicInteger()).addAndGet(times);
+        return this;
+    }
+
+    /**
+     * Remove all latency and failures.
+     */
+    public void reset() {
+        latencyNanos = 0;
+        jitterNanos = 0;
+        failureRate = 0.0;
+        failing.clear();
+        failNext.clear();
+    }
+
+    /**
+     * Apply the configured faults to a call, called before the call is executed.
+     *
+     * @param method Name of the called method.
+     * @throws DBusExecutionException The call has to fail.
+     */
+    void apply(String method) {
+        var delay = latencyNanos;
+        var jitter = jitterNanos;
+        if (jitter > 0) {
+            synchronized (random) {
+                delay += (long) (random.nextDouble() * jitter);
+            }
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(Duration.ofNanos(delay).toMillis(), (int) (delay % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (shouldFail(method)) throw new DBusExecutionException("Injected failure of " + method);
+    }
+
+    private boolean shouldFail(String method) {
+        if (failing.contains(method)) return true;
+        var remaining = failNext.get(method);
+        if (null != remaining && remaining.getAndUpdate(n -> Math.max(0, n - 1)) > 0) return true;
+        var rate = failureRate;
+        if (rate <= 0.0) return false;
+        synchronized (random) {
+            return random.nextDouble() < rate;
+        }
+    }
+}
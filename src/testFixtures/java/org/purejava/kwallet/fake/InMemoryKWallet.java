@@ -0,0 +1,577 @@
+package org.purejava.kwallet.fake;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.freedesktop.dbus.types.Variant;
+import org.purejava.kwallet.KWallet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory implementation of the kwallet daemon. It follows the behaviour of kwalletd: a wallet has one handle
+ * while it is open, which is shared by all applications using it, writes create missing folders and every change
+ * is announced with the same signals kwalletd emits. Wallets are created on first open and never ask for
+ * a password.
+ */
+class InMemoryKWallet implements KWalletDaemon {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryKWallet.class);
+
+    static final int UNKNOWN = 0;
+    static final int PASSWORD = 1;
+    static final int STREAM = 2;
+    static final int MAP = 3;
+
+    private final String path;
+    private final String defaultWallet;
+    private final FaultInjection faults;
+    private final Consumer<DBusSignal> signals;
+    private final Executor executor;
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final Map<String, Wallet> wallets = new TreeMap<>();
+    private final Map<Integer, Wallet> handles = new HashMap<>();
+    private int nextHandle = 1;
+    private int nextTransaction = 1;
+
+    private record Entry(int type, byte[] value) {
+    }
+
+    private static final class Wallet {
+        private final String name;
+        private final Map<String, Map<String, Entry>> folders = new TreeMap<>();
+        private final Map<String, Integer> users = new LinkedHashMap<>();
+        private int handle = -1;
+
+        private Wallet(String name) {
+            this.name = name;
+        }
+
+        private boolean isOpen() {
+            return handle > 0;
+        }
+    }
+
+    private interface SignalFactory {
+        DBusSignal create() throws DBusException;
+    }
+
+    InMemoryKWallet(String path, String defaultWallet, FaultInjection faults, Consumer<DBusSignal> signals, Executor executor) {
+        this.path = path;
+        this.defaultWallet = defaultWallet;
+        this.faults = faults;
+        this.signals = signals;
+        this.executor = executor;
+    }
+
+    long calls(String method) {
+        var count = calls.get(method);
+        return null == count ? 0 : count.sum();
+    }
+
+    boolean awaitCalls(String method, long count, Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (calls) {
+            while (calls(method) < count) {
+                var left = deadline - System.nanoTime();
+                if (left <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(calls, left);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Store an entry without a method call, e.g. to prepare a wallet for a test. No signals are emitted.
+     */
+    synchronized void put(String wallet, String folder, String key, int type, byte[] value) {
+        wallets.computeIfAbsent(wallet, Wallet::new).folders
+                .computeIfAbsent(folder, f -> new TreeMap<>())
+                .put(key, new Entry(type, value.clone()));
+    }
+
+    synchronized void putPassword(String wallet, String folder, String key, String value) {
+        put(wallet, folder, key, PASSWORD, toQString(value));
+    }
+
+    /**
+     * Run a method call: apply the configured faults outside of the lock, so that slow calls
+     * do not block each other, then execute the call on the wallet state.
+     */
+    private <T> T call(String method, Supplier<T> action) {
+        calls.computeIfAbsent(method, m -> new LongAdder()).increment();
+        synchronized (calls) {
+            calls.notifyAll();
+        }
+        faults.apply(method);
+        synchronized (this) {
+            return action.get();
+        }
+    }
+
+    private void run(String method, Runnable action) {
+        call(method, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void emit(SignalFactory factory) {
+        try {
+            signals.accept(factory.create());
+        } catch (DBusException e) {
+            LOG.error(e.toString(), e.getCause());
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return call("isEnabled", () -> true);
+    }
+
+    @Override
+    public int open(String wallet, long wId, String appid) {
+        return call("open", () -> doOpen(wallet, appid));
+    }
+
+    @Override
+    public int openPath(String path, long wId, String appid) {
+        return call("openPath", () -> {
+            openLater(path, appid);
+            return 0;
+        });
+    }
+
+    @Override
+    public int openAsync(String wallet, long wId, String appid, boolean handleSession) {
+        return call("openAsync", () -> openLater(wallet, appid));
+    }
+
+    @Override
+    public int openPathAsync(String path, long wId, String appid, boolean handleSession) {
+        return call("openPathAsync", () -> openLater(path, appid));
+    }
+
+    /**
+     * The result of an asynchronous open is announced with <code>walletAsyncOpened</code> after the reply.
+     */
+    private int openLater(String wallet, String appid) {
+        var tId = nextTransaction++;
+        executor.execute(() -> {
+            int handle;
+            synchronized (this) {
+                handle = doOpen(wallet, appid);
+            }
+            emit(() -> new KWallet.walletAsyncOpened(path, tId, handle));
+        });
+        return tId;
+    }
+
+    private int doOpen(String name, String appid) {
+        if (null == name || name.isBlank()) return -1;
+        var wallet = wallets.get(name);
+        if (null == wallet) {
+            wallet = new Wallet(name);
+            wallets.put(name, wallet);
+            emit(() -> new KWallet.walletCreated(path, name));
+            emit(() -> new KWallet.walletListDirty(path));
+        }
+        if (!wallet.isOpen()) {
+            wallet.handle = nextHandle++;
+            handles.put(wallet.handle, wallet);
+            emit(() -> new KWallet.walletOpened(path, name));
+        }
+        wallet.users.merge(appid, 1, Integer::sum);
+        return wallet.handle;
+    }
+
+    private void doClose(Wallet wallet) {
+        var handle = wallet.handle;
+        handles.remove(handle);
+        wallet.handle = -1;
+        wallet.users.clear();
+        emit(() -> new KWallet.walletClosedId(path, handle));
+        emit(() -> new KWallet.walletClosed(path, wallet.name));
+    }
+
+    @Override
+    public int close(String wallet, boolean force) {
+        return call("close", () -> {
+            var w = wallets.get(wallet);
+            if (null == w) return -1;
+            if (!w.isOpen()) return 0;
+            if (force || w.users.isEmpty()) {
+                doClose(w);
+                return 0;
+            }
+            return w.users.size();
+        });
+    }
+
+    @Override
+    public int close(int handle, boolean force, String appid) {
+        return call("close", () -> {
+            var w = handles.get(handle);
+            if (null == w) return -1;
+            w.users.computeIfPresent(appid, (a, n) -> n > 1 ? n - 1 : null);
+            if (force || w.users.isEmpty()) {
+                doClose(w);
+                return 0;
+            }
+            return w.users.size();
+        });
+    }
+
+    @Override
+    public void sync(int handle, String appid) {
+        run("sync", () -> {
+        });
+    }
+
+    @Override
+    public int deleteWallet(String wallet) {
+        return call("deleteWallet", () -> {
+            var w = wallets.get(wallet);
+            if (null == w) return -1;
+            if (w.isOpen()) doClose(w);
+            wallets.remove(wallet);
+            emit(() -> new KWallet.walletDeleted(path, wallet));
+            emit(() -> new KWallet.walletListDirty(path));
+            return 0;
+        });
+    }
+
+    @Override
+    public boolean isOpen(String wallet) {
+        return call("isOpen", () -> {
+            var w = wallets.get(wallet);
+            return null != w && w.isOpen();
+        });
+    }
+
+    @Override
+    public boolean isOpen(int handle) {
+        return call("isOpen", () -> handles.containsKey(handle));
+    }
+
+    @Override
+    public List<String> users(String wallet) {
+        return call("users", () -> {
+            var w = wallets.get(wallet);
+            return null == w ? List.of() : List.copyOf(w.users.keySet());
+        });
+    }
+
+    @Override
+    public void changePassword(String wallet, long wId, String appid) {
+        run("changePassword", () -> {
+        });
+    }
+
+    @Override
+    public List<String> wallets() {
+        return call("wallets", () -> List.copyOf(wallets.keySet()));
+    }
+
+    @Override
+    public List<String> folderList(int handle, String appid) {
+        return call("folderList", () -> {
+            var w = handles.get(handle);
+            return null == w ? List.of() : List.copyOf(w.folders.keySet());
+        });
+    }
+
+    @Override
+    public boolean hasFolder(int handle, String folder, String appid) {
+        return call("hasFolder", () -> {
+            var w = handles.get(handle);
+            return null != w && w.folders.containsKey(folder);
+        });
+    }
+
+    @Override
+    public boolean createFolder(int handle, String folder, String appid) {
+        return call("createFolder", () -> {
+            var w = handles.get(handle);
+            if (null == w || w.folders.containsKey(folder)) return false;
+            w.folders.put(folder, new TreeMap<>());
+            emit(() -> new KWallet.folderListUpdated(path, w.name));
+            return true;
+        });
+    }
+
+    @Override
+    public boolean removeFolder(int handle, String folder, String appid) {
+        return call("removeFolder", () -> {
+            var w = handles.get(handle);
+            if (null == w || null == w.folders.remove(folder)) return false;
+            emit(() -> new KWallet.folderListUpdated(path, w.name));
+            return true;
+        });
+    }
+
+    @Override
+    public List<String> entryList(int handle, String folder, String appid) {
+        return call("entryList", () -> List.copyOf(entries(handle, folder).keySet()));
+    }
+
+    @Override
+    public byte[] readEntry(int handle, String folder, String key, String appid) {
+        return call("readEntry", () -> {
+            var entry = entries(handle, folder).get(key);
+            return null == entry ? new byte[0] : entry.value();
+        });
+    }
+
+    @Override
+    public byte[] readMap(int handle, String folder, String key, String appid) {
+        return call("readMap", () -> {
+            var entry = entries(handle, folder).get(key);
+            return null == entry || entry.type() != MAP ? new byte[0] : entry.value();
+        });
+    }
+
+    @Override
+    public String readPassword(int handle, String folder, String key, String appid) {
+        return call("readPassword", () -> {
+            var entry = entries(handle, folder).get(key);
+            return null == entry || entry.type() != PASSWORD ? "" : fromQString(entry.value());
+        });
+    }
+
+    @Override
+    public Map<String, Variant<?>> readEntryList(int handle, String folder, String key, String appid) {
+        return call("readEntryList", () -> list(handle, folder, key, UNKNOWN));
+    }
+
+    @Override
+    public Map<String, Variant<?>> entriesList(int handle, String folder, String appid) {
+        return call("entriesList", () -> list(handle, folder, null, UNKNOWN));
+    }
+
+    @Override
+    public Map<String, Variant<?>> readMapList(int handle, String folder, String key, String appid) {
+        return call("readMapList", () -> list(handle, folder, key, MAP));
+    }
+
+    @Override
+    public Map<String, Variant<?>> mapList(int handle, String folder, String appid) {
+        return call("mapList", () -> list(handle, folder, null, MAP));
+    }
+
+    @Override
+    public Map<String, Variant<?>> readPasswordList(int handle, String folder, String key, String appid) {
+        return call("readPasswordList", () -> list(handle, folder, key, PASSWORD));
+    }
+
+    @Override
+    public Map<String, Variant<?>> passwordList(int handle, String folder, String appid) {
+        return call("passwordList", () -> list(handle, folder, null, PASSWORD));
+    }
+
+    /**
+     * Collect the entries of a folder as sent by kwalletd: passwords as strings, everything else as byte arrays.
+     *
+     * @param pattern Wildcard pattern the keys have to match, null for all keys.
+     * @param type    Type of the entries to collect, UNKNOWN for all entries.
+     */
+    private Map<String, Variant<?>> list(int handle, String folder, String pattern, int type) {
+        var matcher = null == pattern ? null : wildcard(pattern);
+        var result = new HashMap<String, Variant<?>>();
+        entries(handle, folder).forEach((key, entry) -> {
+            if (type != UNKNOWN && entry.type() != type) return;
+            if (null != matcher && !matcher.matcher(key).matches()) return;
+            result.put(key, type == PASSWORD ? new Variant<>(fromQString(entry.value())) : new Variant<>(entry.value()));
+        });
+        return result;
+    }
+
+    @Override
+    public int renameEntry(int handle, String folder, String oldName, String newName, String appid) {
+        return call("renameEntry", () -> {
+            var w = handles.get(handle);
+            if (null == w) return -1;
+            var entries = w.folders.get(folder);
+            if (null == entries || !entries.containsKey(oldName)) return -1;
+            entries.put(newName, entries.remove(oldName));
+            emit(() -> new KWallet.folderUpdated(path, w.name, folder));
+            return 0;
+        });
+    }
+
+    @Override
+    public int writeEntry(int handle, String folder, String key, byte[] value, int entryType, String appid) {
+        return call("writeEntry", () -> write(handle, folder, key, entryType, value));
+    }
+
+    @Override
+    public int writeEntry(int handle, String folder, String key, byte[] value, String appid) {
+        return call("writeEntry", () -> write(handle, folder, key, STREAM, value));
+    }
+
+    @Override
+    public int writeMap(int handle, String folder, String key, byte[] value, String appid) {
+        return call("writeMap", () -> write(handle, folder, key, MAP, value));
+    }
+
+    @Override
+    public int writePassword(int handle, String folder, String key, String value, String appid) {
+        return call("writePassword", () -> write(handle, folder, key, PASSWORD, toQString(value)));
+    }
+
+    private int write(int handle, String folder, String key, int type, byte[] value) {
+        var w = handles.get(handle);
+        if (null == w) return -1;
+        var entries = w.folders.get(folder);
+        if (null == entries) {
+            entries = new TreeMap<>();
+            w.folders.put(folder, entries);
+            emit(() -> new KWallet.folderListUpdated(path, w.name));
+        }
+        entries.put(key, new Entry(type, value));
+        emit(() -> new KWallet.folderUpdated(path, w.name, folder));
+        return 0;
+    }
+
+    @Override
+    public boolean hasEntry(int handle, String folder, String key, String appid) {
+        return call("hasEntry", () -> entries(handle, folder).containsKey(key));
+    }
+
+    @Override
+    public int entryType(int handle, String folder, String key, String appid) {
+        return call("entryType", () -> {
+            var entry = entries(handle, folder).get(key);
+            return null == entry ? UNKNOWN : entry.type();
+        });
+    }
+
+    @Override
+    public int removeEntry(int handle, String folder, String key, String appid) {
+        return call("removeEntry", () -> {
+            var w = handles.get(handle);
+            if (null == w) return -1;
+            var entries = w.folders.get(folder);
+            if (null != entries && null != entries.remove(key)) {
+                emit(() -> new KWallet.folderUpdated(path, w.name, folder));
+            }
+            return 0;
+        });
+    }
+
+    @Override
+    public boolean disconnectApplication(String wallet, String application) {
+        return call("disconnectApplication", () -> {
+            var w = wallets.get(wallet);
+            if (null == w || null == w.users.remove(application)) return false;
+            emit(() -> new KWallet.applicationDisconnected(path, wallet, application));
+            if (w.users.isEmpty()) doClose(w);
+            return true;
+        });
+    }
+
+    @Override
+    public void reconfigure() {
+        run("reconfigure", () -> {
+        });
+    }
+
+    @Override
+    public boolean folderDoesNotExist(String wallet, String folder) {
+        return call("folderDoesNotExist", () -> {
+            var w = wallets.get(wallet);
+            return null == w || !w.folders.containsKey(folder);
+        });
+    }
+
+    @Override
+    public boolean keyDoesNotExist(String wallet, String folder, String key) {
+        return call("keyDoesNotExist", () -> {
+            var w = wallets.get(wallet);
+            return null == w || !w.folders.getOrDefault(folder, Map.of()).containsKey(key);
+        });
+    }
+
+    @Override
+    public void closeAllWallets() {
+        run("closeAllWallets", () -> {
+            for (var w : new ArrayList<>(handles.values())) {
+                doClose(w);
+            }
+            emit(() -> new KWallet.allWalletsClosed(path));
+        });
+    }
+
+    @Override
+    public String networkWallet() {
+        return call("networkWallet", () -> defaultWallet);
+    }
+
+    @Override
+    public String localWallet() {
+        return call("localWallet", () -> defaultWallet);
+    }
+
+    @Override
+    public void pamOpen(String wallet, byte[] passwordHash, int sessionTimeout) {
+        run("pamOpen", () -> {
+        });
+    }
+
+    @Override
+    public String getObjectPath() {
+        return path;
+    }
+
+    private Map<String, Entry> entries(int handle, String folder) {
+        var w = handles.get(handle);
+        if (null == w) return Map.of();
+        return w.folders.getOrDefault(folder, Map.of());
+    }
+
+    /**
+     * Translate a QRegExp wildcard pattern, as used by the deprecated list methods, into a regular expression.
+     */
+    private static Pattern wildcard(String pattern) {
+        var regex = new StringBuilder();
+        for (var c : pattern.toCharArray()) {
+            switch (c) {
+                case '*' -> regex.append(".*");
+                case '?' -> regex.append('.');
+                default -> regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Passwords are stored the way kwalletd stores them, as serialized QString.
+     */
+    private static byte[] toQString(String value) {
+        var chars = value.getBytes(StandardCharsets.UTF_16BE);
+        return ByteBuffer.allocate(4 + chars.length).putInt(chars.length).put(chars).array();
+    }
+
+    private static String fromQString(byte[] value) {
+        if (value.length < 4) return "";
+        var length = ByteBuffer.wrap(value).getInt();
+        if (length < 0 || length > value.length - 4) return "";
+        return new String(value, 4, length, StandardCharsets.UTF_16BE);
+    }
+}
@@ -0,0 +1,110 @@
+package org.purejava.kwallet.fake;
+
+import org.freedesktop.dbus.annotations.DBusInterfaceName;
+import org.freedesktop.dbus.annotations.MethodNoReply;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.types.Variant;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Server side of <code>org.kde.KWallet</code> as described in <code>org.kde.KWallet.xml</code>.
+ * <p>
+ * In contrast to {@link org.purejava.kwallet.KWallet}, which describes the interface as seen by the client,
+ * the methods returning <code>a{sv}</code> are declared with the types sent over the wire.
+ * The signals are the ones declared in {@link org.purejava.kwallet.KWallet}.
+ */
+@DBusInterfaceName("org.kde.KWallet")
+public interface KWalletDaemon extends DBusInterface {
+
+    boolean isEnabled();
+
+    int open(String wallet, long wId, String appid);
+
+    int openPath(String path, long wId, String appid);
+
+    int openAsync(String wallet, long wId, String appid, boolean handleSession);
+
+    int openPathAsync(String path, long wId, String appid, boolean handleSession);
+
+    int close(String wallet, boolean force);
+
+    int close(int handle, boolean force, String appid);
+
+    @MethodNoReply
+    void sync(int handle, String appid);
+
+    int deleteWallet(String wallet);
+
+    boolean isOpen(String wallet);
+
+    boolean isOpen(int handle);
+
+    List<String> users(String wallet);
+
+    void changePassword(String wallet, long wId, String appid);
+
+    List<String> wallets();
+
+    List<String> folderList(int handle, String appid);
+
+    boolean hasFolder(int handle, String folder, String appid);
+
+    boolean createFolder(int handle, String folder, String appid);
+
+    boolean removeFolder(int handle, String folder, String appid);
+
+    List<String> entryList(int handle, String folder, String appid);
+
+    byte[] readEntry(int handle, String folder, String key, String appid);
+
+    byte[] readMap(int handle, String folder, String key, String appid);
+
+    String readPassword(int handle, String folder, String key, String appid);
+
+    Map<String, Variant<?>> readEntryList(int handle, String folder, String key, String appid);
+
+    Map<String, Variant<?>> entriesList(int handle, String folder, String appid);
+
+    Map<String, Variant<?>> readMapList(int handle, String folder, String key, String appid);
+
+    Map<String, Variant<?>> mapList(int handle, String folder, String appid);
+
+    Map<String, Variant<?>> readPasswordList(int handle, String folder, String key, String appid);
+
+    Map<String, Variant<?>> passwordList(int handle, String folder, String appid);
+
+    int renameEntry(int handle, String folder, String oldName, String newName, String appid);
+
+    int writeEntry(int handle, String folder, String key, byte[] value, int entryType, String appid);
+
+    int writeEntry(int handle, String folder, String key, byte[] value, String appid);
+
+    int writeMap(int handle, String folder, String key, byte[] value, String appid);
+
+    int writePassword(int handle, String folder, String key, String value, String appid);
+
+    boolean hasEntry(int handle, String folder, String key, String appid);
+
+    int entryType(int handle, String folder, String key, String appid);
+
+    int removeEntry(int handle, String folder, String key, String appid);
+
+    boolean disconnectApplication(String wallet, String application);
+
+    void reconfigure();
+
+    boolean folderDoesNotExist(String wallet, String folder);
+
+    boolean keyDoesNotExist(String wallet, String folder, String key);
+
+    void closeAllWallets();
+
+    String networkWallet();
+
+    String localWallet();
+
+    @MethodNoReply
+    void pamOpen(String wallet, byte[] passwordHash, int sessionTimeout);
+}